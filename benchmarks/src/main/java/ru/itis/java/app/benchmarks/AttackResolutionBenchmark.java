@@ -0,0 +1,122 @@
+package ru.itis.java.app.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.server.PlayerState;
+import ru.itis.java.app.network.server.SpatialGrid;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttackResolutionBenchmark {
+    private static final String[] DIRECTIONS = {"up", "down", "left", "right"};
+
+    @Param({"10", "50", "100", "500"})
+    private int players;
+
+    private final Map<Integer, PlayerState> playerStates = new ConcurrentHashMap<>();
+    private SpatialGrid grid;
+    private int[] candidates;
+    private int attacker;
+
+    private static class Rectangle {
+        private final int x, y, width, height;
+
+        Rectangle(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        boolean intersects(Rectangle other) {
+            return intersects(other.x, other.y, other.width, other.height);
+        }
+
+        boolean intersects(int otherX, int otherY, int otherWidth, int otherHeight) {
+            return x < otherX + otherWidth && x + width > otherX &&
+                    y < otherY + otherHeight && y + height > otherY;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        grid = new SpatialGrid(GameProtocol.MAX_X + 48, GameProtocol.MAX_Y + 48);
+        playerStates.clear();
+        for (int id = 1; id <= players; id++) {
+            PlayerState state = new PlayerState(id);
+            state.setX(random.nextInt(GameProtocol.MAX_X));
+            state.setY(random.nextInt(GameProtocol.MAX_Y));
+            playerStates.put(id, state);
+            grid.update(id, state.getX(), state.getY());
+        }
+        candidates = new int[players + 1];
+    }
+
+    @Benchmark
+    public int linearScan() {
+        PlayerState attackerState = nextAttacker();
+        String direction = DIRECTIONS[attackerState.getId() & 3];
+        int hits = 0;
+        for (PlayerState target : playerStates.values()) {
+            if (target.getId() == attackerState.getId() || target.isDead()) {
+                continue;
+            }
+            Rectangle attackZone = attackZone(attackerState.getX() + 24, attackerState.getY() + 24, direction);
+            Rectangle targetBounds = new Rectangle(target.getX(), target.getY(), 48, 48);
+            if (attackZone.intersects(targetBounds)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int gridQuery() {
+        PlayerState attackerState = nextAttacker();
+        String direction = DIRECTIONS[attackerState.getId() & 3];
+        Rectangle attackZone = attackZone(attackerState.getX() + 24, attackerState.getY() + 24, direction);
+        int count = grid.queryRect(attackZone.x - 47, attackZone.y - 47,
+                attackZone.x + attackZone.width - 1, attackZone.y + attackZone.height - 1, candidates);
+        int hits = 0;
+        for (int i = 0; i < count; i++) {
+            PlayerState target = playerStates.get(candidates[i]);
+            if (target == null || target.getId() == attackerState.getId() || target.isDead()) {
+                continue;
+            }
+            if (attackZone.intersects(target.getX(), target.getY(), 48, 48)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private PlayerState nextAttacker() {
+        attacker = attacker % players + 1;
+        return playerStates.get(attacker);
+    }
+
+    private static Rectangle attackZone(int x, int y, String direction) {
+        int attackRange = GameProtocol.ATTACK_RANGE;
+        int attackWidth = 30;
+        switch (direction) {
+            case "up":
+                return new Rectangle(x - attackWidth / 2, y - attackRange, attackWidth, attackRange);
+            case "down":
+                return new Rectangle(x - attackWidth / 2, y, attackWidth, attackRange);
+            case "left":
+                return new Rectangle(x - attackRange, y - attackWidth / 2, attackRange, attackWidth);
+            default:
+                return new Rectangle(x, y - attackWidth / 2, attackRange, attackWidth);
+        }
+    }
+}
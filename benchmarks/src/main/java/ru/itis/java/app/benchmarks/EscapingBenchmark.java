@@ -0,0 +1,66 @@
+package ru.itis.java.app.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.protocol.PacketDecoder;
+import ru.itis.java.app.network.protocol.PacketEncoder;
+import ru.itis.java.app.network.protocol.SnapshotBuffer;
+import ru.itis.java.app.network.protocol.StreamingPacketDecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+// Escaping only exists in protocol v1; v2 frames are length-prefixed and copied as is.
+public class EscapingBenchmark {
+    private static final int PLAYERS = 50;
+
+    @Param({"typical", "worst"})
+    private String payload;
+
+    private PacketEncoder encoder;
+    private ByteBuffer out;
+    private SnapshotBuffer players;
+    private byte[] frame;
+    private StreamingPacketDecoder decoder;
+    private PacketDecoder legacyDecoder;
+
+    @Setup
+    public void setUp() {
+        encoder = new PacketEncoder(GameProtocol.PROTOCOL_V1);
+        out = ByteBuffer.allocate(GameProtocol.MAX_FRAME_SIZE);
+        players = payload.equals("worst") ? ProtocolFixtures.escapeHeavyPlayers(PLAYERS) : ProtocolFixtures.players(PLAYERS, 42);
+        int length = encoder.encodeWorldState(out, 11, players);
+        frame = new byte[length];
+        out.flip();
+        out.get(frame);
+        decoder = new StreamingPacketDecoder();
+        legacyDecoder = new PacketDecoder();
+    }
+
+    @Benchmark
+    public int escape() {
+        out.clear();
+        return encoder.encodeWorldState(out, 11, players);
+    }
+
+    @Benchmark
+    public int unescapeInPlace(Blackhole blackhole) throws IOException {
+        decoder.feed(frame, 0, frame.length);
+        return decoder.decode(blackhole::consume);
+    }
+
+    @Benchmark
+    public int unescapeCopy(Blackhole blackhole) {
+        PacketDecoder.DecodeResult result = legacyDecoder.decode(frame, frame.length);
+        blackhole.consume(result.packets());
+        return result.packets().size();
+    }
+}
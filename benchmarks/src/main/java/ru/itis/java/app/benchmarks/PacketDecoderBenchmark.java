@@ -0,0 +1,40 @@
+package ru.itis.java.app.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.protocol.PacketDecoder;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketDecoderBenchmark {
+    @Param({"coalesced", "fragmented"})
+    private String delivery;
+
+    private byte[][] chunks;
+    private PacketDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        byte[] stream = ProtocolFixtures.mixedStream(GameProtocol.PROTOCOL_V1);
+        chunks = ProtocolFixtures.split(stream, delivery.equals("fragmented") ? ProtocolFixtures.FRAGMENT_SIZE : stream.length);
+        decoder = new PacketDecoder();
+    }
+
+    @Benchmark
+    public int decode(Blackhole blackhole) {
+        int packets = 0;
+        for (byte[] chunk : chunks) {
+            PacketDecoder.DecodeResult result = decoder.decode(chunk, chunk.length);
+            blackhole.consume(result.packets());
+            packets += result.packets().size();
+        }
+        return packets;
+    }
+}
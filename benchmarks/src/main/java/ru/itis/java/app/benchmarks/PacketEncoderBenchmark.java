@@ -0,0 +1,139 @@
+package ru.itis.java.app.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.itis.java.app.entity.PlayerStats;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.protocol.PacketEncoder;
+import ru.itis.java.app.network.protocol.SnapshotBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketEncoderBenchmark {
+    private static final byte UPDATE_FLAGS = GameProtocol.FLAG_POSITION | GameProtocol.FLAG_DIRECTION | GameProtocol.FLAG_SPRITE_NUM;
+
+    @Param({"1", "2"})
+    private int version;
+
+    private PacketEncoder encoder;
+    private ByteBuffer out;
+    private PlayerStats stats;
+    private SnapshotBuffer players;
+    private SnapshotBuffer baseline;
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        encoder = new PacketEncoder(version);
+        out = ByteBuffer.allocate(GameProtocol.MAX_FRAME_SIZE);
+        stats = new PlayerStats();
+        baseline = ProtocolFixtures.players(10, 42);
+        players = ProtocolFixtures.moved(baseline, 50, 43);
+    }
+
+    private ByteBuffer buffer() {
+        out.clear();
+        return out;
+    }
+
+    private int x() {
+        tick = (tick + 4) & 0x0FFF;
+        return tick;
+    }
+
+    @Benchmark
+    public int handshake() {
+        return encoder.encodeHandshake(buffer(), 7, stats);
+    }
+
+    @Benchmark
+    public int handshakeRequest() {
+        return encoder.encodeHandshakeRequest(buffer(), 7, GameProtocol.PROTOCOL_V2);
+    }
+
+    @Benchmark
+    public int roomRequest() {
+        return encoder.encodeRoomRequest(buffer(), 5);
+    }
+
+    @Benchmark
+    public int playerUpdate() {
+        return encoder.encodePlayerUpdate(buffer(), UPDATE_FLAGS, 7, x(), 480, GameProtocol.DIR_RIGHT, (byte) 1);
+    }
+
+    @Benchmark
+    public byte[] playerUpdateBytes() throws Exception {
+        return encoder.encodePlayerUpdate(7, x(), 480, "right", (byte) 1);
+    }
+
+    @Benchmark
+    public byte[] fastPlayerUpdate() {
+        return encoder.fastEncodePlayerUpdate(7, x(), 480, GameProtocol.DIR_RIGHT, (byte) 1);
+    }
+
+    @Benchmark
+    public int attack() {
+        return encoder.encodeAttack(buffer(), 7, GameProtocol.DIR_LEFT, x(), 480);
+    }
+
+    @Benchmark
+    public int playerHit() {
+        return encoder.encodePlayerHit(buffer(), 7, 8, x(), 480);
+    }
+
+    @Benchmark
+    public int playerDamage() {
+        return encoder.encodePlayerDamage(buffer(), 7, 8, 25, 75, 100, 3);
+    }
+
+    @Benchmark
+    public int playerDeath() {
+        return encoder.encodePlayerDeath(buffer(), 8, 7);
+    }
+
+    @Benchmark
+    public int worldState() {
+        return encoder.encodeWorldState(buffer(), 11, players);
+    }
+
+    @Benchmark
+    public int worldDelta() {
+        return encoder.encodeWorldDelta(buffer(), 11, 10, players, baseline);
+    }
+
+    @Benchmark
+    public int snapshotAck() {
+        return encoder.encodeSnapshotAck(buffer(), 11);
+    }
+
+    @Benchmark
+    public int playerJoin() {
+        return encoder.encodePlayerJoin(buffer(), 7, x(), 480, GameProtocol.DIR_DOWN, stats);
+    }
+
+    @Benchmark
+    public int playerLeave() {
+        return encoder.encodePlayerLeave(buffer(), 7);
+    }
+
+    @Benchmark
+    public int itemPickup() {
+        return encoder.encodeItemPickup(buffer(), 7, 3, "Shield", 1440, 480, 100);
+    }
+
+    @Benchmark
+    public int itemRemove() {
+        return encoder.encodeItemRemove(buffer(), 3);
+    }
+
+    @Benchmark
+    public int playerExperience() {
+        return encoder.encodePlayerExperience(buffer(), 7, 125, 200, 2);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.itis.java.app.benchmarks;
+
+import ru.itis.java.app.entity.PlayerStats;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.protocol.PacketEncoder;
+import ru.itis.java.app.network.protocol.SnapshotBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+final class ProtocolFixtures {
+    static final int FRAGMENT_SIZE = 7;
+
+    private ProtocolFixtures() {
+    }
+
+    static SnapshotBuffer players(int count, long seed) {
+        Random random = new Random(seed);
+        SnapshotBuffer players = new SnapshotBuffer(count);
+        for (int id = 1; id <= count; id++) {
+            players.add(id, random.nextInt(GameProtocol.MAX_X), random.nextInt(GameProtocol.MAX_Y),
+                    (byte) random.nextInt(4), 100, 100,
+                    1 + random.nextInt(10), 10 + random.nextInt(40), random.nextInt(500), 100,
+                    (byte) (1 + random.nextInt(2)), false);
+        }
+        return players;
+    }
+
+    // Every byte of these records is PACKET_START, PACKET_END or ESCAPE_CHAR, so v1 doubles them all.
+    static SnapshotBuffer escapeHeavyPlayers(int count) {
+        SnapshotBuffer players = new SnapshotBuffer(count);
+        for (int i = 0; i < count; i++) {
+            int id = i % 3 == 0 ? 0x00FF : i % 3 == 1 ? 0x7D00 : 0xFF7D;
+            players.add(id, 0x00FF, 0x007D, GameProtocol.DIR_UP, 0xFF00, 0xFF7D,
+                    0x7D, 0x7D00, 0xFF00, 0x00FF, (byte) 0x00, false);
+        }
+        return players;
+    }
+
+    static SnapshotBuffer moved(SnapshotBuffer baseline, int changedPercent, long seed) {
+        Random random = new Random(seed);
+        SnapshotBuffer players = new SnapshotBuffer(baseline.size());
+        for (int row = 0; row < baseline.size(); row++) {
+            if (random.nextInt(100) < changedPercent) {
+                players.add(baseline.getId(row), Math.min(GameProtocol.MAX_X, baseline.getX(row) + 4), baseline.getY(row),
+                        baseline.getDirection(row), baseline.getHealth(row), baseline.getMaxHealth(row),
+                        baseline.getLevel(row), baseline.getDamage(row), baseline.getExperience(row),
+                        baseline.getExperienceToNextLevel(row),
+                        (byte) (baseline.getSpriteNum(row) == 1 ? 2 : 1), baseline.isDead(row));
+            } else {
+                players.addRow(baseline, row);
+            }
+        }
+        return players;
+    }
+
+    // One of every packet the server and client exchange, plus a ten-player world state.
+    static byte[] mixedStream(int version) {
+        PacketEncoder encoder = new PacketEncoder(version);
+        ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+        PlayerStats stats = new PlayerStats();
+        encoder.encodeHandshake(out, 1, stats);
+        encoder.encodeRoomRequest(out, 5);
+        encoder.encodePlayerJoin(out, 2, 480, 480, GameProtocol.DIR_DOWN, stats);
+        for (int i = 0; i < 8; i++) {
+            encoder.encodePlayerUpdate(out, (byte) (GameProtocol.FLAG_POSITION | GameProtocol.FLAG_DIRECTION | GameProtocol.FLAG_SPRITE_NUM),
+                    2, 480 + i * 4, 480, GameProtocol.DIR_RIGHT, (byte) (1 + (i & 1)));
+        }
+        encoder.encodeAttack(out, 2, GameProtocol.DIR_RIGHT, 512, 480);
+        encoder.encodePlayerHit(out, 2, 1, 560, 480);
+        encoder.encodePlayerDamage(out, 2, 1, 25, 75, 100, 1);
+        encoder.encodeWorldState(out, 7, players(10, 7));
+        encoder.encodeSnapshotAck(out, 7);
+        encoder.encodeItemPickup(out, 1, 3, "Key", 960, 720, 25);
+        encoder.encodeItemRemove(out, 3);
+        encoder.encodePlayerExperience(out, 1, 25, 100, 1);
+        encoder.encodePlayerDeath(out, 1, 2);
+        encoder.encodePlayerLeave(out, 1);
+        byte[] stream = new byte[out.position()];
+        out.flip();
+        out.get(stream);
+        return stream;
+    }
+
+    static byte[][] split(byte[] stream, int chunkSize) {
+        byte[][] chunks = new byte[(stream.length + chunkSize - 1) / chunkSize][];
+        for (int i = 0; i < chunks.length; i++) {
+            int offset = i * chunkSize;
+            chunks[i] = new byte[Math.min(chunkSize, stream.length - offset)];
+            System.arraycopy(stream, offset, chunks[i], 0, chunks[i].length);
+        }
+        return chunks;
+    }
+}
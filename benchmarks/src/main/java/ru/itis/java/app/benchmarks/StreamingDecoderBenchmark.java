@@ -0,0 +1,47 @@
+package ru.itis.java.app.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.itis.java.app.network.protocol.StreamingPacketDecoder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamingDecoderBenchmark {
+    @Param({"coalesced", "fragmented"})
+    private String delivery;
+
+    @Param({"1", "2"})
+    private int version;
+
+    @Param({"true", "false"})
+    private boolean reusePackets;
+
+    private byte[] stream;
+    private int chunk;
+    private StreamingPacketDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        stream = ProtocolFixtures.mixedStream(version);
+        chunk = delivery.equals("fragmented") ? ProtocolFixtures.FRAGMENT_SIZE : stream.length;
+        decoder = new StreamingPacketDecoder(reusePackets);
+        decoder.setProtocolVersion(version);
+    }
+
+    @Benchmark
+    public int decode(Blackhole blackhole) throws IOException {
+        int packets = 0;
+        for (int offset = 0; offset < stream.length; offset += chunk) {
+            decoder.feed(stream, offset, Math.min(chunk, stream.length - offset));
+            packets += decoder.decode(blackhole::consume);
+        }
+        return packets;
+    }
+}
@@ -0,0 +1,65 @@
+package ru.itis.java.app.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.protocol.PacketEncoder;
+import ru.itis.java.app.network.protocol.SnapshotBuffer;
+import ru.itis.java.app.network.protocol.StreamingPacketDecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldStateBenchmark {
+    @Param({"1", "10", "50", "100"})
+    private int players;
+
+    @Param({"1", "2"})
+    private int version;
+
+    private PacketEncoder encoder;
+    private ByteBuffer out;
+    private SnapshotBuffer snapshot;
+    private SnapshotBuffer baseline;
+    private byte[] encoded;
+    private StreamingPacketDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        encoder = new PacketEncoder(version);
+        out = ByteBuffer.allocate(GameProtocol.MAX_FRAME_SIZE);
+        baseline = ProtocolFixtures.players(players, 42);
+        snapshot = ProtocolFixtures.moved(baseline, 30, 43);
+        int length = encoder.encodeWorldState(out, 11, snapshot);
+        encoded = new byte[length];
+        out.flip();
+        out.get(encoded);
+        decoder = new StreamingPacketDecoder();
+        decoder.setProtocolVersion(version);
+    }
+
+    @Benchmark
+    public int encodeWorldState() {
+        out.clear();
+        return encoder.encodeWorldState(out, 11, snapshot);
+    }
+
+    @Benchmark
+    public int encodeWorldDelta() {
+        out.clear();
+        return encoder.encodeWorldDelta(out, 11, 10, snapshot, baseline);
+    }
+
+    @Benchmark
+    public int decodeWorldState(Blackhole blackhole) throws IOException {
+        decoder.feed(encoded, 0, encoded.length);
+        return decoder.decode(packet -> blackhole.consume(packet.getPlayersData()));
+    }
+}
@@ -0,0 +1,35 @@
+package ru.itis.java.app.entity;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelSystemBenchmark {
+    // 25 stays on the level, 150 crosses one level, 60000 cascades through dozens of them.
+    @Param({"25", "150", "60000"})
+    private int experience;
+
+    private PlayerStats stats;
+
+    @Setup
+    public void setUp() {
+        stats = new PlayerStats();
+    }
+
+    @Benchmark
+    public int addExperienceWithLevelCheck() {
+        stats.setLevel(1);
+        stats.setExperience(0);
+        stats.setMaxHealth(100);
+        stats.setHealth(100);
+        stats.setDamage(25);
+        LevelSystem.addExperienceWithLevelCheck(stats, experience);
+        return stats.getLevel();
+    }
+}
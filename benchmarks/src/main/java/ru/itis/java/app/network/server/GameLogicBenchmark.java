@@ -0,0 +1,71 @@
+package ru.itis.java.app.network.server;
+
+import org.openjdk.jmh.annotations.*;
+import ru.itis.java.app.network.protocol.GamePacket;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.protocol.PacketEncoder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameLogicBenchmark {
+    private static final int PICKUP_ITEM = 1;
+
+    @Param({"10", "50", "100"})
+    private int players;
+
+    @Param({"spread", "crowd"})
+    private String layout;
+
+    @Param({"2"})
+    private int version;
+
+    private ServerFixture fixture;
+    private GamePacket[] attacks;
+    private GamePacket pickup;
+    private PlayerState picker;
+    private int attacker;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new ServerFixture(players, layout, version);
+        PacketEncoder encoder = new PacketEncoder();
+        attacks = new GamePacket[4];
+        for (byte direction = 0; direction < attacks.length; direction++) {
+            attacks[direction] = ServerFixture.decode(
+                    encoder.encodeAttack(1, GameProtocol.byteToDirection(direction), 0, 0), GameProtocol.PROTOCOL_V1);
+        }
+        ItemState item = fixture.server.getItem(PICKUP_ITEM);
+        pickup = ServerFixture.decode(encoder.encodeItemPickup(1, item.getId(), item.getType(),
+                item.getX(), item.getY(), item.getExperienceReward()), GameProtocol.PROTOCOL_V1);
+        picker = fixture.sessions.get(0).getState();
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    // Pushed targets and lost health are put back after every attack so the crowd stays a crowd.
+    @Benchmark
+    public void handleAttack() throws IOException {
+        attacker = (attacker + 1) % players;
+        PlayerState state = fixture.sessions.get(attacker).getState();
+        fixture.server.handleAttack(state, attacks[attacker & 3]);
+        fixture.restore();
+    }
+
+    @Benchmark
+    public void handleItemPickup() throws IOException {
+        ItemState item = fixture.server.getItem(PICKUP_ITEM);
+        fixture.server.movePlayer(picker, item.getX(), item.getY());
+        fixture.server.handleItemPickup(picker, pickup);
+        fixture.server.respawnItems();
+    }
+}
@@ -0,0 +1,97 @@
+package ru.itis.java.app.network.server;
+
+import ru.itis.java.app.network.protocol.GamePacket;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.protocol.PacketEncoder;
+import ru.itis.java.app.network.protocol.StreamingPacketDecoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// A room with real game logic whose sessions swallow every frame instead of writing to a socket.
+final class ServerFixture {
+    static final int CROWD_SIZE = 8 * 48;
+    static final int CROWD_X = 20 * 48;
+    static final int CROWD_Y = 14 * 48;
+
+    static final class SinkSession extends PlayerSession {
+        private long bytes = 0;
+        private long frames = 0;
+
+        SinkSession() {
+            super(null, null);
+        }
+
+        @Override
+        public void sendFrame(OutboundFrame frame, boolean droppable) {
+            bytes += frame.length();
+            frames++;
+        }
+
+        long getSunkBytes() { return bytes; }
+        long getSunkFrames() { return frames; }
+    }
+
+    final SocketGameServer server;
+    final List<SinkSession> sessions = new ArrayList<>();
+    final int[] homeX;
+    final int[] homeY;
+    private final PrintStream stdout = System.out;
+
+    ServerFixture(int players, String layout, int protocolVersion) throws IOException {
+        // The server logs pickups and protocol upgrades; keep the cost of formatting, drop the output.
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        server = new SocketGameServer(0, ServerTransport.NIO, SessionExecutor.CACHED);
+        homeX = new int[players];
+        homeY = new int[players];
+        Random random = new Random(42);
+        boolean crowd = layout.equals("crowd");
+        for (int i = 0; i < players; i++) {
+            SinkSession session = new SinkSession();
+            server.attachSession(session);
+            server.getTickLoop().runPendingCommands();
+            if (protocolVersion >= GameProtocol.PROTOCOL_V2) {
+                session.dispatch(handshakeRequest(session.getPlayerId(), protocolVersion));
+            }
+            homeX[i] = crowd ? CROWD_X + random.nextInt(CROWD_SIZE) : random.nextInt(GameProtocol.MAX_X + 1);
+            homeY[i] = crowd ? CROWD_Y + random.nextInt(CROWD_SIZE) : random.nextInt(GameProtocol.MAX_Y + 1);
+            server.movePlayer(session.getState(), homeX[i], homeY[i]);
+            sessions.add(session);
+        }
+        server.sendWorldStateToAll();
+    }
+
+    void restore() {
+        for (int i = 0; i < sessions.size(); i++) {
+            PlayerState state = sessions.get(i).getState();
+            if (state.getX() != homeX[i] || state.getY() != homeY[i]) {
+                server.movePlayer(state, homeX[i], homeY[i]);
+            }
+            if (state.getStats().getHealth() < state.getStats().getMaxHealth()) {
+                state.getStats().setHealth(state.getStats().getMaxHealth());
+            }
+        }
+    }
+
+    void close() {
+        server.stop();
+        System.setOut(stdout);
+    }
+
+    static GamePacket decode(byte[] frame, int protocolVersion) throws IOException {
+        StreamingPacketDecoder decoder = new StreamingPacketDecoder(false);
+        decoder.setProtocolVersion(protocolVersion);
+        decoder.feed(frame, 0, frame.length);
+        GamePacket[] result = new GamePacket[1];
+        decoder.decode(packet -> result[0] = packet);
+        return result[0];
+    }
+
+    private static GamePacket handshakeRequest(int playerId, int version) throws IOException {
+        return decode(new PacketEncoder().encodeHandshakeRequest(playerId, version), GameProtocol.PROTOCOL_V1);
+    }
+}
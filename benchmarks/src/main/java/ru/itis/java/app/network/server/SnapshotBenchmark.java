@@ -0,0 +1,69 @@
+package ru.itis.java.app.network.server;
+
+import org.openjdk.jmh.annotations.*;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.protocol.SnapshotBuffer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+    @Param({"10", "50", "100"})
+    private int players;
+
+    @Param({"spread", "crowd"})
+    private String layout;
+
+    @Param({"1", "2"})
+    private int version;
+
+    // With acks every session gets a delta against the previous tick, without them a full state.
+    @Param({"true", "false"})
+    private boolean acks;
+
+    private ServerFixture fixture;
+    private int seq;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new ServerFixture(players, layout, version);
+        seq = 1;
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public SnapshotBuffer buildSnapshot() {
+        return fixture.server.buildSnapshot();
+    }
+
+    @Benchmark
+    public void sendWorldStateToAll() {
+        fixture.server.sendWorldStateToAll();
+        acknowledge();
+    }
+
+    @Benchmark
+    public void tick() {
+        fixture.server.tick();
+        acknowledge();
+    }
+
+    private void acknowledge() {
+        if (acks) {
+            for (ServerFixture.SinkSession session : fixture.sessions) {
+                session.ackSnapshot(seq);
+            }
+        }
+        seq = (seq + 1) & GameProtocol.SEQUENCE_MASK;
+    }
+}
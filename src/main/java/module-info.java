@@ -13,7 +13,9 @@ module semestr.work.greed.island {
     requires eu.hansolo.tilesfx;
     requires com.almasb.fxgl.all;
     requires java.desktop;
+    requires java.management;
 
     opens ru.itis.java.app to javafx.fxml;
     exports ru.itis.java.app;
+    exports ru.itis.java.app.network.server to java.management;
 }
\ No newline at end of file
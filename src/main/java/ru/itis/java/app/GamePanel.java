@@ -136,7 +136,17 @@ public class GamePanel extends Pane {
     }
 
     private void update() {
-        player.update();
+        if (gameClient == null) {
+            player.update();
+            return;
+        }
+        gameClient.beginBatch();
+        try {
+            gameClient.dispatchEvents();
+            player.update();
+        } finally {
+            gameClient.flush();
+        }
     }
 
     private void draw() {
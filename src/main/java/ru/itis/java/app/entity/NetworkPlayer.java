@@ -5,6 +5,8 @@ import javafx.scene.image.Image;
 import javafx.scene.shape.Rectangle;
 import ru.itis.java.app.GamePanel;
 import ru.itis.java.app.KeyHandler;
+import ru.itis.java.app.network.PredictionBuffer;
+import ru.itis.java.app.network.SnapshotClock;
 import ru.itis.java.app.network.SocketGameClient;
 import ru.itis.java.app.network.protocol.*;
 import java.util.*;
@@ -24,10 +26,15 @@ public class NetworkPlayer extends Entity {
     private boolean beingPushed = false;
     private int pushTargetX, pushTargetY;
     private final int pushSpeed = 12;
-    private Map<Integer, RemotePlayerEntity> remotePlayers = new HashMap<>();
-    private int lastSentX = -1, lastSentY = -1;
-    private String lastSentDirection = "";
-    private int lastSentSpriteNum = 1;
+    private final IdRegistry<RemotePlayerEntity> remotePlayers = new IdRegistry<>();
+    private final BitSet visibleIds = new BitSet();
+    private final PredictionBuffer predictions = new PredictionBuffer();
+    private final SnapshotClock snapshotClock = new SnapshotClock();
+    private int inputX, inputY;
+    private final byte[] pendingInputs = new byte[GameProtocol.MAX_INPUTS_PER_PACKET];
+    private int pendingInputCount = 0;
+    private int pendingFirstSeq;
+    private int lastInputMask = 0;
     private long lastSendTime = 0;
     private static final long SEND_INTERVAL = 33;
     private PlayerStats stats;
@@ -64,15 +71,18 @@ public class NetworkPlayer extends Entity {
         loadPlayerImages();
         this.playerId = 0;
         if (gameClient != null) {
+            gameClient.setQueuedDispatch(true);
             setupNetworkCallbacks();
             gameClient.startReceiving();
         }
     }
 
     private void setDefaultValues() {
-        worldX = gamePanel.getTileSize() * 20;
-        worldY = gamePanel.getTileSize() * 7;
-        speed = 4;
+        worldX = GameProtocol.SPAWN_X;
+        worldY = GameProtocol.SPAWN_Y;
+        inputX = worldX;
+        inputY = worldY;
+        speed = GameProtocol.PLAYER_SPEED;
         attackDuration = 15;
         stats = new PlayerStats();
         isDead = false;
@@ -118,8 +128,7 @@ public class NetworkPlayer extends Entity {
                     remotePlayers.put(otherPlayerId, rpe);
                 }
                 if (packet.hasFlag(GameProtocol.FLAG_POSITION)) {
-                    rpe.setTargetPosition(packet.getX(), packet.getY());
-                    rpe.setHasTarget(true);
+                    rpe.addPosition(snapshotClock.currentTick(System.nanoTime()), packet.getX(), packet.getY());
                 }
                 if (packet.hasFlag(GameProtocol.FLAG_DIRECTION)) {
                     rpe.setDirection(GameProtocol.byteToDirection(packet.getDirection()));
@@ -162,19 +171,27 @@ public class NetworkPlayer extends Entity {
                 if (!handshakeReceived) return;
                 List<GamePacket.PlayerData> playersData = packet.getPlayersData();
                 if (playersData == null) return;
-                Set<Integer> currentIds = new HashSet<>();
+                long now = System.nanoTime();
+                double tick = packet.getSnapshotSeq() >= 0
+                        ? snapshotClock.onSnapshot(packet.getSnapshotSeq(), now)
+                        : snapshotClock.currentTick(now);
+                visibleIds.clear();
                 for (GamePacket.PlayerData playerData : playersData) {
                     int otherPlayerId = playerData.getId();
-                    if (otherPlayerId == playerId) continue;
-                    currentIds.add(otherPlayerId);
+                    if (otherPlayerId == playerId) {
+                        if (packet.getInputAck() >= 0) {
+                            predictions.acknowledge(packet.getInputAck(), playerData.getX(), playerData.getY());
+                        }
+                        continue;
+                    }
+                    visibleIds.set(otherPlayerId);
                     RemotePlayerEntity rpe = remotePlayers.get(otherPlayerId);
                     if (rpe == null) {
                         rpe = new RemotePlayerEntity(otherPlayerId, gamePanel);
                         remotePlayers.put(otherPlayerId, rpe);
                     }
-                    rpe.setTargetPosition(playerData.getX(), playerData.getY());
+                    rpe.addPosition(tick, playerData.getX(), playerData.getY());
                     rpe.setDirection(playerData.getDirectionString());
-                    rpe.setHasTarget(true);
                     rpe.setSpriteNum(playerData.getSpriteNum());
                     PlayerStats remoteStats = rpe.getStats();
                     remoteStats.setLevel(playerData.getLevel());
@@ -184,11 +201,9 @@ public class NetworkPlayer extends Entity {
                     remoteStats.setExperienceToNextLevel(playerData.getExperienceToNextLevel());
                     rpe.setDead(playerData.isDead());
                 }
-                Iterator<Integer> iterator = remotePlayers.keySet().iterator();
-                while (iterator.hasNext()) {
-                    int id = iterator.next();
-                    if (!currentIds.contains(id) && id != playerId) {
-                        iterator.remove();
+                for (int id = remotePlayers.next(1); id > 0; id = remotePlayers.next(id + 1)) {
+                    if (!visibleIds.get(id) && id != playerId) {
+                        remotePlayers.remove(id);
                     }
                 }
             }
@@ -347,6 +362,8 @@ public class NetworkPlayer extends Entity {
             @Override
             public void onDisconnect() {
                 remotePlayers.clear();
+                predictions.clear();
+                snapshotClock.reset();
             }
         });
     }
@@ -549,7 +566,12 @@ public class NetworkPlayer extends Entity {
         if (attackAnimationPlaying || beingPushed) {
             return;
         }
+        int previousX = worldX;
+        int previousY = worldY;
         updateMovement();
+        inputX += worldX - previousX;
+        inputY += worldY - previousY;
+        reconcileWithServer();
         if (gameClient != null && gameClient.isConnected() && handshakeReceived) {
             sendUpdatesToServer();
         }
@@ -575,33 +597,49 @@ public class NetworkPlayer extends Entity {
         }
     }
 
+    private void reconcileWithServer() {
+        if (!predictions.reconcile()) {
+            return;
+        }
+        int worldWidth = gamePanel.getWorldWidth();
+        int worldHeight = gamePanel.getWorldHeight();
+        int tileSize = gamePanel.getTileSize();
+        worldX = Math.max(0, Math.min(inputX + predictions.getOffsetX(), worldWidth - tileSize));
+        worldY = Math.max(0, Math.min(inputY + predictions.getOffsetY(), worldHeight - tileSize));
+    }
+
     private void sendUpdatesToServer() {
         if (isDead || gameOver) return;
         if (gameClient != null && gameClient.isConnected() && playerId > 0) {
-            long currentTime = System.currentTimeMillis();
-            if (currentTime - lastSendTime > SEND_INTERVAL) {
-                boolean positionChanged = (worldX != lastSentX || worldY != lastSentY);
-                boolean directionChanged = !direction.equals(lastSentDirection);
-                boolean spriteChanged = (spriteNum != lastSentSpriteNum);
-
-                if (positionChanged || directionChanged || spriteChanged) {
-                    Integer sendX = positionChanged ? worldX : null;
-                    Integer sendY = positionChanged ? worldY : null;
-                    String sendDirection = directionChanged ? direction : null;
-                    Byte sendSpriteNum = spriteChanged ? (byte)spriteNum : null;
-
-                    gameClient.sendPlayerUpdate(sendX, sendY, sendDirection, sendSpriteNum);
-
-                    lastSentX = worldX;
-                    lastSentY = worldY;
-                    lastSentDirection = direction;
-                    lastSentSpriteNum = spriteNum;
-                    lastSendTime = currentTime;
+            int mask = inputMask();
+            // Idle frames are only worth sending once, so the server can reset the walk animation.
+            if (mask != 0 || lastInputMask != 0) {
+                int inputSeq = predictions.record(inputX, inputY);
+                if (pendingInputCount == 0) {
+                    pendingFirstSeq = inputSeq;
                 }
+                pendingInputs[pendingInputCount++] = (byte) mask;
+            }
+            lastInputMask = mask;
+            long currentTime = System.currentTimeMillis();
+            if (pendingInputCount > 0 && (currentTime - lastSendTime > SEND_INTERVAL
+                    || pendingInputCount == pendingInputs.length)) {
+                gameClient.sendPlayerInput(pendingFirstSeq, pendingInputs, pendingInputCount);
+                pendingInputCount = 0;
+                lastSendTime = currentTime;
             }
         }
     }
 
+    private int inputMask() {
+        int mask = 0;
+        if (keyHandler.upPressed) mask |= GameProtocol.INPUT_UP;
+        if (keyHandler.downPressed) mask |= GameProtocol.INPUT_DOWN;
+        if (keyHandler.leftPressed) mask |= GameProtocol.INPUT_LEFT;
+        if (keyHandler.rightPressed) mask |= GameProtocol.INPUT_RIGHT;
+        return mask;
+    }
+
     public void startAttack() {
         if (isDead || gameOver || !handshakeReceived) return;
         attacking = true;
@@ -629,8 +667,9 @@ public class NetworkPlayer extends Entity {
     }
 
     private void updateRemotePlayers() {
-        for (RemotePlayerEntity rpe : remotePlayers.values()) {
-            rpe.update();
+        double renderTick = snapshotClock.renderTick(System.nanoTime());
+        for (RemotePlayerEntity rpe : remotePlayers) {
+            rpe.update(renderTick);
         }
     }
 
@@ -645,7 +684,7 @@ public class NetworkPlayer extends Entity {
             return;
         }
         drawLocalPlayer(gc);
-        for (RemotePlayerEntity rpe : remotePlayers.values()) {
+        for (RemotePlayerEntity rpe : remotePlayers) {
             rpe.draw(gc);
         }
         drawHealthBar(gc);
@@ -3,12 +3,13 @@ package ru.itis.java.app.entity;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
 import ru.itis.java.app.GamePanel;
+import ru.itis.java.app.network.InterpolationBuffer;
 
 public class RemotePlayerEntity {
     private int id;
     private GamePanel gamePanel;
     private int currentX, currentY;
-    private int targetX, targetY;
+    private final InterpolationBuffer positions = new InterpolationBuffer();
     private String direction;
     private int spriteNum = 1;
     private int spriteCounter = 0;
@@ -22,7 +23,6 @@ public class RemotePlayerEntity {
     private static final int DEATH_ANIMATION_FRAME_DURATION = 10;
     private static final int DEATH_ANIMATION_TOTAL_FRAMES = 5;
     private boolean hasTarget = false;
-    private static final float LERP_FACTOR = 0.5f;
 
     private static Image up1, up2, down1, down2, left1, left2, right1, right2;
     private static Image attackRight, attackLeft, attackUp1, attackUp2, attackDown1, attackDown2;
@@ -33,15 +33,19 @@ public class RemotePlayerEntity {
         this.gamePanel = gamePanel;
         this.currentX = gamePanel.getTileSize() * 20;
         this.currentY = gamePanel.getTileSize() * 7;
-        this.targetX = gamePanel.getTileSize() * 20;
-        this.targetY = gamePanel.getTileSize() * 7;
         this.direction = "down";
         this.stats = new PlayerStats();
     }
 
     public void setTargetPosition(int x, int y) {
-        this.targetX = x;
-        this.targetY = y;
+        this.currentX = x;
+        this.currentY = y;
+        positions.reset(x, y);
+        this.hasTarget = true;
+    }
+
+    public void addPosition(double tick, int x, int y) {
+        positions.add(tick, x, y);
         this.hasTarget = true;
     }
 
@@ -84,7 +88,7 @@ public class RemotePlayerEntity {
         attackAnimationCounter = 15;
     }
 
-    public void update() {
+    public void update(double renderTick) {
         if (isDead) {
             deathAnimationCounter--;
             if (deathAnimationCounter > 0) {
@@ -97,21 +101,18 @@ public class RemotePlayerEntity {
             return;
         }
 
-        if (hasTarget) {
-            int dx = targetX - currentX;
-            int dy = targetY - currentY;
-            double distance = Math.sqrt(dx * dx + dy * dy);
-            if (distance > 2.0) {
-                currentX += (int) (dx * LERP_FACTOR);
-                currentY += (int) (dy * LERP_FACTOR);
+        if (hasTarget && positions.sample(renderTick)) {
+            int x = positions.getSampledX();
+            int y = positions.getSampledY();
+            if (x != currentX || y != currentY) {
+                currentX = x;
+                currentY = y;
                 spriteCounter++;
                 if (spriteCounter > 12) {
                     spriteNum = (spriteNum == 1) ? 2 : 1;
                     spriteCounter = 0;
                 }
             } else {
-                currentX = targetX;
-                currentY = targetY;
                 spriteNum = 1;
                 spriteCounter = 0;
             }
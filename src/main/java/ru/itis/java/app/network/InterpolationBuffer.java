@@ -0,0 +1,79 @@
+package ru.itis.java.app.network;
+
+// Recent tick-stamped positions of one remote entity, kept sorted by tick.
+public class InterpolationBuffer {
+    private static final int CAPACITY = 32;
+    private static final double MAX_EXTRAPOLATION_TICKS = 3.0;
+
+    private final double[] ticks = new double[CAPACITY];
+    private final int[] xs = new int[CAPACITY];
+    private final int[] ys = new int[CAPACITY];
+    private int size = 0;
+    private int sampledX, sampledY;
+
+    public synchronized void add(double tick, int x, int y) {
+        int index = size;
+        while (index > 0 && ticks[index - 1] > tick) {
+            index--;
+        }
+        if (index > 0 && ticks[index - 1] == tick) {
+            xs[index - 1] = x;
+            ys[index - 1] = y;
+            return;
+        }
+        if (size == CAPACITY) {
+            if (index == 0) {
+                return;
+            }
+            shift(1, 0, --index);
+            size--;
+        }
+        shift(index, index + 1, size - index);
+        ticks[index] = tick;
+        xs[index] = x;
+        ys[index] = y;
+        size++;
+    }
+
+    public synchronized void reset(int x, int y) {
+        size = 0;
+        sampledX = x;
+        sampledY = y;
+    }
+
+    public synchronized boolean sample(double renderTick) {
+        if (size == 0) {
+            return false;
+        }
+        while (size > 2 && ticks[1] <= renderTick) {
+            shift(1, 0, size - 1);
+            size--;
+        }
+        if (size == 1 || renderTick <= ticks[0]) {
+            sampledX = xs[0];
+            sampledY = ys[0];
+            return true;
+        }
+        int from = 0;
+        int to = 1;
+        if (renderTick > ticks[size - 1]) {
+            from = size - 2;
+            to = size - 1;
+            renderTick = Math.min(renderTick, ticks[to] + MAX_EXTRAPOLATION_TICKS);
+        }
+        double t = (renderTick - ticks[from]) / (ticks[to] - ticks[from]);
+        sampledX = (int) Math.round(xs[from] + (xs[to] - xs[from]) * t);
+        sampledY = (int) Math.round(ys[from] + (ys[to] - ys[from]) * t);
+        return true;
+    }
+
+    private void shift(int from, int to, int length) {
+        System.arraycopy(ticks, from, ticks, to, length);
+        System.arraycopy(xs, from, xs, to, length);
+        System.arraycopy(ys, from, ys, to, length);
+    }
+
+    public synchronized int size() { return size; }
+    public synchronized int getSampledX() { return sampledX; }
+    public synchronized int getSampledY() { return sampledY; }
+}
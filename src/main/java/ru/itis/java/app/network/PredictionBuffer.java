@@ -0,0 +1,89 @@
+package ru.itis.java.app.network;
+
+import ru.itis.java.app.network.protocol.GameProtocol;
+
+// Inputs sent to the server but not yet acknowledged, keyed by the 16-bit input sequence.
+// The local player is drawn at its own integrated input position shifted by the offset the
+// server reported for the last acknowledged input, so unacknowledged movement is replayed on
+// top of every correction instead of being thrown away.
+public class PredictionBuffer {
+    private static final int CAPACITY = 256;
+
+    private final int[] seqs = new int[CAPACITY];
+    private final int[] xs = new int[CAPACITY];
+    private final int[] ys = new int[CAPACITY];
+    private int head = 0;
+    private int count = 0;
+    private int nextSeq = 0;
+
+    private boolean ackPending = false;
+    private int pendingAck = -1;
+    private int pendingServerX, pendingServerY;
+
+    private int ackedSeq = -1;
+    private int ackedX, ackedY;
+    private boolean hasOffset = false;
+    private int offsetX = 0, offsetY = 0;
+
+    public synchronized int record(int inputX, int inputY) {
+        if (count == CAPACITY) {
+            head = (head + 1) % CAPACITY;
+            count--;
+        }
+        int slot = (head + count) % CAPACITY;
+        int seq = nextSeq;
+        seqs[slot] = seq;
+        xs[slot] = inputX;
+        ys[slot] = inputY;
+        count++;
+        nextSeq = (nextSeq + 1) & GameProtocol.SEQUENCE_MASK;
+        return seq;
+    }
+
+    public synchronized void acknowledge(int seq, int serverX, int serverY) {
+        if (ackedSeq >= 0 && GameProtocol.isNewerSequence(ackedSeq, seq)) {
+            return;
+        }
+        pendingAck = seq;
+        pendingServerX = serverX;
+        pendingServerY = serverY;
+        ackPending = true;
+    }
+
+    public synchronized boolean reconcile() {
+        if (!ackPending) {
+            return hasOffset;
+        }
+        ackPending = false;
+        while (count > 0 && !GameProtocol.isNewerSequence(seqs[head], pendingAck)) {
+            if (seqs[head] == pendingAck) {
+                ackedSeq = pendingAck;
+                ackedX = xs[head];
+                ackedY = ys[head];
+            }
+            head = (head + 1) % CAPACITY;
+            count--;
+        }
+        if (ackedSeq != pendingAck) {
+            return hasOffset;
+        }
+        offsetX = pendingServerX - ackedX;
+        offsetY = pendingServerY - ackedY;
+        hasOffset = true;
+        return true;
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        count = 0;
+        ackPending = false;
+        ackedSeq = -1;
+        hasOffset = false;
+        offsetX = 0;
+        offsetY = 0;
+    }
+
+    public synchronized int getOffsetX() { return offsetX; }
+    public synchronized int getOffsetY() { return offsetY; }
+    public synchronized int getPendingCount() { return count; }
+}
@@ -0,0 +1,77 @@
+package ru.itis.java.app.network;
+
+import ru.itis.java.app.network.protocol.GameProtocol;
+
+// Maps the server's 16-bit snapshot sequence onto a continuous tick timeline and estimates the
+// tick length from arrival times, since the client does not know the server's tick rate.
+public class SnapshotClock {
+    private static final long DEFAULT_TICK_NANOS = 1_000_000_000L / 30;
+    private static final long MIN_TICK_NANOS = 5_000_000L;
+    private static final long MAX_TICK_NANOS = 200_000_000L;
+    private static final long INTERPOLATION_DELAY_NANOS = 100_000_000L;
+    private static final double RESYNC_TICKS = 10.0;
+    private static final double DRIFT_CORRECTION = 0.1;
+
+    private boolean started = false;
+    private int lastSeq;
+    private long latestTick;
+    private long latestArrivalNanos;
+    private double tickNanos = DEFAULT_TICK_NANOS;
+
+    private boolean rendering = false;
+    private double renderTick;
+    private long lastRenderNanos;
+
+    public synchronized long onSnapshot(int seq, long nowNanos) {
+        if (!started) {
+            started = true;
+            lastSeq = seq;
+            latestTick = 0;
+            latestArrivalNanos = nowNanos;
+            return latestTick;
+        }
+        int diff = (short) ((seq - lastSeq) & GameProtocol.SEQUENCE_MASK);
+        long tick = latestTick + diff;
+        if (diff > 0) {
+            double sample = (double) (nowNanos - latestArrivalNanos) / diff;
+            sample = Math.max(MIN_TICK_NANOS, Math.min(sample, MAX_TICK_NANOS));
+            tickNanos += (sample - tickNanos) / 8;
+            lastSeq = seq;
+            latestTick = tick;
+            latestArrivalNanos = nowNanos;
+        }
+        return tick;
+    }
+
+    public synchronized double currentTick(long nowNanos) {
+        if (!started) {
+            return 0;
+        }
+        return latestTick + (nowNanos - latestArrivalNanos) / tickNanos;
+    }
+
+    // Advances smoothly with local time and is only nudged toward the target, so bunched or late
+    // snapshots do not make remote players jump back and forth.
+    public synchronized double renderTick(long nowNanos) {
+        double target = currentTick(nowNanos) - INTERPOLATION_DELAY_NANOS / tickNanos;
+        if (!rendering || Math.abs(target - renderTick) > RESYNC_TICKS) {
+            rendering = true;
+            renderTick = target;
+        } else {
+            renderTick += (nowNanos - lastRenderNanos) / tickNanos;
+            renderTick += (target - renderTick) * DRIFT_CORRECTION;
+        }
+        lastRenderNanos = nowNanos;
+        return renderTick;
+    }
+
+    public synchronized double getTickNanos() {
+        return tickNanos;
+    }
+
+    public synchronized void reset() {
+        started = false;
+        rendering = false;
+        tickNanos = DEFAULT_TICK_NANOS;
+    }
+}
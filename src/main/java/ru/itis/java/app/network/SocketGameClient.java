@@ -3,21 +3,40 @@ package ru.itis.java.app.network;
 import ru.itis.java.app.network.protocol.*;
 import java.io.*;
 import java.net.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
 
 public class SocketGameClient {
+    private static final int MAX_EVENTS_PER_FRAME = 1024;
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
     private Socket socket;
     private DataInputStream rawIn;
     private DataOutputStream rawOut;
-    private PacketEncoder encoder;
-    private PacketDecoder decoder;
-    private ByteArrayOutputStream receiveBuffer;
+    private volatile PacketEncoder encoder;
+    private StreamingPacketDecoder decoder;
     private int playerId;
+    private final int roomId;
     private volatile boolean connected = false;
+    private volatile long bytesReceived = 0;
+    private volatile long bytesSent = 0;
     private Thread receiveThread;
+    private volatile Thread sendThread;
+    private volatile Thread batchingThread;
     private BlockingQueue<byte[]> sendQueue;
     private PacketListener packetListener;
     private final Object sendLock = new Object();
+    private final Object encodeLock = new Object();
+    private final int preferredProtocol = Integer.getInteger("pleasure.client.protocol", GameProtocol.PROTOCOL_VERSION);
+    private volatile int protocolVersion = GameProtocol.PROTOCOL_V1;
+    private int requestedProtocol = 0;
+    private final SnapshotHistory snapshotHistory = new SnapshotHistory(SnapshotHistory.DEFAULT_CAPACITY * 2);
+    private final Queue<GamePacket> events = new ConcurrentLinkedQueue<>();
+    private volatile boolean queuedDispatch = false;
+    private volatile boolean disconnectPending = false;
 
     public interface PacketListener {
         void onHandshake(GamePacket packet);
@@ -37,6 +56,11 @@ public class SocketGameClient {
     }
 
     public SocketGameClient(String host, int port) throws IOException {
+        this(host, port, GameProtocol.DEFAULT_ROOM);
+    }
+
+    public SocketGameClient(String host, int port, int roomId) throws IOException {
+        this.roomId = roomId;
         try {
             this.socket = new Socket();
             this.socket.connect(new InetSocketAddress(host, port), 5000);
@@ -46,12 +70,14 @@ public class SocketGameClient {
             this.rawIn = new DataInputStream(socket.getInputStream());
             this.rawOut = new DataOutputStream(socket.getOutputStream());
             this.encoder = new PacketEncoder();
-            this.decoder = new PacketDecoder();
-            this.receiveBuffer = new ByteArrayOutputStream();
+            this.decoder = new StreamingPacketDecoder();
             this.sendQueue = new LinkedBlockingQueue<>(100);
 
             this.playerId = 0;
 
+            rawOut.write(encoder.encodeRoomRequest(roomId));
+            rawOut.flush();
+
             this.connected = true;
 
             Thread.sleep(100);
@@ -70,19 +96,46 @@ public class SocketGameClient {
         }
     }
 
+    // Listener callbacks are queued by the receive thread and run by whoever calls dispatchEvents(),
+    // so game state is only touched from the render loop. Must be set before startReceiving().
+    public void setQueuedDispatch(boolean queued) {
+        if (receiveThread != null || queued == queuedDispatch) {
+            return;
+        }
+        queuedDispatch = queued;
+        decoder = new StreamingPacketDecoder(!queued);
+    }
+
+    public int dispatchEvents() {
+        int dispatched = 0;
+        GamePacket packet;
+        while (dispatched < MAX_EVENTS_PER_FRAME && (packet = events.poll()) != null) {
+            dispatch(packet);
+            dispatched++;
+        }
+        if (disconnectPending && events.isEmpty()) {
+            disconnectPending = false;
+            if (packetListener != null) {
+                packetListener.onDisconnect();
+            }
+        }
+        return dispatched;
+    }
+
     private void startThreads() {
         receiveThread = new Thread(() -> {
             System.out.println("[CLIENT] Receive thread started");
-            byte[] buffer = new byte[1024];
+            StreamingPacketDecoder.PacketHandler handler = this::handlePacket;
             try {
                 while (connected) {
                     int bytesRead;
                     try {
-                        bytesRead = rawIn.read(buffer);
+                        bytesRead = decoder.readFrom(rawIn);
                         if (bytesRead == -1) {
                             System.out.println("[CLIENT] Connection closed by server (EOF)");
                             break;
                         }
+                        bytesReceived += bytesRead;
 
                     } catch (SocketTimeoutException e) {
                         continue;
@@ -93,28 +146,7 @@ public class SocketGameClient {
                         break;
                     }
 
-                    synchronized (receiveBuffer) {
-                        receiveBuffer.write(buffer, 0, bytesRead);
-                        byte[] allData = receiveBuffer.toByteArray();
-
-                        PacketDecoder.DecodeResult result = decoder.decode(allData, allData.length);
-
-                        for (GamePacket packet : result.packets()) {
-                            handlePacket(packet);
-                        }
-
-                        if (result.bytesProcessed() > 0) {
-                            int remaining = allData.length - result.bytesProcessed();
-                            if (remaining > 0) {
-                                byte[] newBuffer = new byte[remaining];
-                                System.arraycopy(allData, result.bytesProcessed(), newBuffer, 0, remaining);
-                                receiveBuffer.reset();
-                                receiveBuffer.write(newBuffer);
-                            } else {
-                                receiveBuffer.reset();
-                            }
-                        }
-                    }
+                    decoder.decode(handler);
                 }
             } catch (Exception e) {
                 System.err.println("[CLIENT] Error in receive thread: " + e.getMessage());
@@ -123,27 +155,39 @@ public class SocketGameClient {
                 System.out.println("[CLIENT] Receive thread ending");
                 if (connected) {
                     disconnect();
-                    if (packetListener != null) {
+                    if (queuedDispatch) {
+                        disconnectPending = true;
+                    } else if (packetListener != null) {
                         packetListener.onDisconnect();
                     }
                 }
             }
         });
 
-        Thread sendThread = new Thread(() -> {
+        sendThread = new Thread(() -> {
+            byte[] writeBuffer = new byte[WRITE_BUFFER_SIZE];
             while (connected) {
                 try {
-                    byte[] data = sendQueue.poll(10, TimeUnit.MILLISECONDS);
-                    if (data != null) {
-                        System.out.println("[CLIENT] Sending " + data.length + " bytes");
+                    // Everything queued since the last wakeup goes out in a single write.
+                    int length = 0;
+                    byte[] data;
+                    while ((data = sendQueue.poll()) != null) {
+                        if (length + data.length > writeBuffer.length) {
+                            writeBuffer = Arrays.copyOf(writeBuffer, Math.max(writeBuffer.length * 2, length + data.length));
+                        }
+                        System.arraycopy(data, 0, writeBuffer, length, data.length);
+                        length += data.length;
+                    }
+                    if (length > 0) {
                         synchronized (sendLock) {
-                            rawOut.write(data);
+                            rawOut.write(writeBuffer, 0, length);
                             rawOut.flush();
                         }
+                        bytesSent += length;
+                    }
+                    if (sendQueue.isEmpty()) {
+                        LockSupport.park(this);
                     }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
                 } catch (Exception e) {
                     if (connected) {
                         System.err.println("[CLIENT] Send error: " + e.getMessage());
@@ -170,8 +214,41 @@ public class SocketGameClient {
             int newPlayerId = packet.getPlayerId();
             this.playerId = newPlayerId;
             System.out.println("[CLIENT] Received handshake, playerId = " + newPlayerId);
+            if (negotiateProtocol(packet)) {
+                return;
+            }
+        }
+
+        try {
+            if (packet.getType() == GameProtocol.TYPE_WORLD_STATE) {
+                if (packet.getSnapshotSeq() >= 0) {
+                    snapshotHistory.put(packet.getSnapshotSeq(), SnapshotHistory.copyOf(packet.getPlayersData()));
+                    sendSnapshotAck(packet.getSnapshotSeq());
+                }
+            } else if (packet.getType() == GameProtocol.TYPE_WORLD_DELTA) {
+                List<GamePacket.PlayerData> players = snapshotHistory.applyDelta(packet);
+                if (players == null) {
+                    return;
+                }
+                snapshotHistory.put(packet.getSnapshotSeq(), players);
+                sendSnapshotAck(packet.getSnapshotSeq());
+                SnapshotHistory.copyInto(players, packet.getPlayersData());
+                packet.setType(GameProtocol.TYPE_WORLD_STATE);
+            }
+        } catch (Exception e) {
+            System.err.println("[CLIENT] Error handling packet: " + e.getMessage());
+            e.printStackTrace();
+            return;
         }
 
+        if (queuedDispatch) {
+            events.offer(packet);
+        } else {
+            dispatch(packet);
+        }
+    }
+
+    private void dispatch(GamePacket packet) {
         try {
             byte packetType = packet.getType();
 
@@ -223,24 +300,99 @@ public class SocketGameClient {
         }
     }
 
+    private boolean negotiateProtocol(GamePacket packet) {
+        if (requestedProtocol != 0) {
+            if (packet.getProtocolVersion() != requestedProtocol) {
+                return false;
+            }
+            decoder.setProtocolVersion(requestedProtocol);
+            protocolVersion = requestedProtocol;
+            requestedProtocol = 0;
+            System.out.println("[CLIENT] Switched to protocol v" + protocolVersion);
+            return true;
+        }
+        int offered = Math.min(packet.getProtocolVersion(), preferredProtocol);
+        if (protocolVersion == GameProtocol.PROTOCOL_V1 && offered >= GameProtocol.PROTOCOL_V2) {
+            synchronized (encodeLock) {
+                if (enqueue(encoder.encodeHandshakeRequest(playerId, offered))) {
+                    encoder = new PacketEncoder(offered);
+                    requestedProtocol = offered;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean enqueue(byte[] data) {
+        if (!sendQueue.offer(data)) {
+            return false;
+        }
+        if (batchingThread != Thread.currentThread()) {
+            wakeWriter();
+        }
+        return true;
+    }
+
+    private void wakeWriter() {
+        Thread writer = sendThread;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    // Messages produced between beginBatch() and flush() on the same thread are written together.
+    public void beginBatch() {
+        batchingThread = Thread.currentThread();
+    }
+
+    public void flush() {
+        batchingThread = null;
+        wakeWriter();
+    }
+
+    private void sendSnapshotAck(int seq) {
+        synchronized (encodeLock) {
+            enqueue(encoder.encodeSnapshotAck(seq));
+        }
+    }
+
     public void sendPlayerUpdate(Integer x, Integer y, String direction, Byte spriteNum) {
+        sendPlayerUpdate(-1, x, y, direction, spriteNum);
+    }
+
+    public void sendPlayerUpdate(int inputSeq, Integer x, Integer y, String direction, Byte spriteNum) {
         if (!connected) return;
         try {
-            byte[] data = encoder.encodePlayerUpdate(playerId, x, y, direction, spriteNum);
-            if (data != null) {
-                sendQueue.offer(data);
+            synchronized (encodeLock) {
+                byte[] data = encoder.encodePlayerUpdate(playerId, inputSeq, x, y, direction, spriteNum);
+                if (data != null) {
+                    enqueue(data);
+                }
             }
         } catch (Exception e) {
             System.err.println("Error encoding player update: " + e.getMessage());
         }
     }
 
+    public void sendPlayerInput(int firstSeq, byte[] masks, int count) {
+        if (!connected || count <= 0) return;
+        try {
+            synchronized (encodeLock) {
+                enqueue(encoder.encodePlayerInput(firstSeq, masks, count));
+            }
+        } catch (Exception e) {
+            System.err.println("Error encoding player input: " + e.getMessage());
+        }
+    }
+
     public void sendAttack(String direction, int x, int y) {
         if (!connected) return;
         try {
-            byte[] data = encoder.encodeAttack(playerId, direction, x, y);
-            if (data != null) {
-                sendQueue.offer(data);
+            synchronized (encodeLock) {
+                byte[] data = encoder.encodeAttack(playerId, direction, x, y);
+                if (data != null) {
+                    enqueue(data);
+                }
             }
         } catch (Exception e) {
             System.err.println("Error encoding attack: " + e.getMessage());
@@ -250,9 +402,11 @@ public class SocketGameClient {
     public void sendFastPlayerUpdate(int x, int y, byte direction, byte spriteNum) {
         if (!connected) return;
         try {
-            byte[] data = encoder.fastEncodePlayerUpdate(playerId, x, y, direction, spriteNum);
-            if (data != null) {
-                sendQueue.offer(data);
+            synchronized (encodeLock) {
+                byte[] data = encoder.fastEncodePlayerUpdate(playerId, x, y, direction, spriteNum);
+                if (data != null) {
+                    enqueue(data);
+                }
             }
         } catch (Exception e) {
             System.err.println("Error encoding fast update: " + e.getMessage());
@@ -262,9 +416,11 @@ public class SocketGameClient {
     public void sendItemPickup(int playerId, int itemId, String itemType, int itemX, int itemY, int experienceGained) {
         if (!connected) return;
         try {
-            byte[] data = encoder.encodeItemPickup(playerId, itemId, itemType, itemX, itemY, experienceGained);
-            if (data != null) {
-                sendQueue.offer(data);
+            synchronized (encodeLock) {
+                byte[] data = encoder.encodeItemPickup(playerId, itemId, itemType, itemX, itemY, experienceGained);
+                if (data != null) {
+                    enqueue(data);
+                }
             }
         } catch (Exception e) {
             System.err.println("Error encoding item pickup: " + e.getMessage());
@@ -274,9 +430,11 @@ public class SocketGameClient {
     public void sendPlayerExperience(int playerId, int experience, int totalExperience, int level) {
         if (!connected) return;
         try {
-            byte[] data = encoder.encodePlayerExperience(playerId, experience, totalExperience, level);
-            if (data != null) {
-                sendQueue.offer(data);
+            synchronized (encodeLock) {
+                byte[] data = encoder.encodePlayerExperience(playerId, experience, totalExperience, level);
+                if (data != null) {
+                    enqueue(data);
+                }
             }
         } catch (Exception e) {
             System.err.println("Error encoding experience update: " + e.getMessage());
@@ -286,19 +444,38 @@ public class SocketGameClient {
     public void disconnect() {
         if (!connected) return;
         connected = false;
+        wakeWriter();
         try {
             socket.close();
         } catch (IOException e) {
         }
         encoder.close();
         decoder.reset();
+        snapshotHistory.clear();
+        events.clear();
         System.out.println("Client disconnected");
     }
 
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
     public int getPlayerId() {
         return playerId;
     }
 
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
     public boolean isConnected() {
         return connected && socket != null && !socket.isClosed() && socket.isConnected();
     }
@@ -311,7 +488,7 @@ public class SocketGameClient {
         return encoder;
     }
 
-    public PacketDecoder getDecoder() {
+    public StreamingPacketDecoder getDecoder() {
         return decoder;
     }
 
@@ -0,0 +1,16 @@
+package ru.itis.java.app.network.bot;
+
+public enum BotBehaviour {
+    IDLE,
+    WANDER,
+    SWARM;
+
+    public static BotBehaviour fromString(String value) {
+        if (value == null) return WANDER;
+        switch (value.trim().toLowerCase()) {
+            case "idle": return IDLE;
+            case "swarm": return SWARM;
+            default: return WANDER;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.itis.java.app.network.bot;
+
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.server.SessionExecutor;
+import java.util.HashMap;
+import java.util.Map;
+
+public class BotConfig {
+    private final Map<String, String> options = new HashMap<>();
+
+    public static BotConfig fromArgs(String[] args) {
+        BotConfig config = new BotConfig();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Неизвестный аргумент: " + arg);
+            }
+            String key = arg.substring(2);
+            int separator = key.indexOf('=');
+            if (separator >= 0) {
+                config.options.put(key.substring(0, separator), key.substring(separator + 1));
+            } else {
+                config.options.put(key, "true");
+            }
+        }
+        return config;
+    }
+
+    public String get(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = options.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректное значение " + key + ": " + value);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = options.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    public String getHost() { return get("host", "localhost"); }
+    public int getPort() { return getInt("port", 1234); }
+    public int getRoom() { return getInt("room", GameProtocol.DEFAULT_ROOM); }
+    public int getBots() { return Math.max(1, getInt("bots", 10)); }
+    public int getDurationSeconds() { return Math.max(1, getInt("duration", 60)); }
+    public int getRampMillis() { return Math.max(0, getInt("ramp", 50)); }
+    public int getUpdateRate() { return Math.max(1, getInt("update-rate", 30)); }
+    public int getAttackIntervalMillis() { return Math.max(0, getInt("attack-interval", 1000)); }
+    public boolean isPickupEnabled() { return getBoolean("pickup", true); }
+    public boolean isRespawnEnabled() { return getBoolean("respawn", true); }
+    public boolean isVerbose() { return getBoolean("verbose", false); }
+    public int getReportIntervalSeconds() { return Math.max(1, getInt("report-interval", 5)); }
+    public BotBehaviour getBehaviour() { return BotBehaviour.fromString(get("behaviour", null)); }
+    public SessionExecutor getExecutor() { return SessionExecutor.fromString(get("executor", "virtual")); }
+}
@@ -0,0 +1,359 @@
+package ru.itis.java.app.network.bot;
+
+import ru.itis.java.app.network.SocketGameClient;
+import ru.itis.java.app.network.protocol.GamePacket;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class LoadBot implements SocketGameClient.PacketListener {
+    private static final long ATTACK_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    private static final int SWARM_CENTER_X = 25 * 48;
+    private static final int SWARM_CENTER_Y = 18 * 48;
+    private static final int SWARM_SPREAD = 4 * 48;
+    private static final int PICKUP_DISTANCE = 48;
+    private static final int ARRIVE_DISTANCE = 24;
+    private static final int STUCK_FRAMES = GameProtocol.INPUT_FRAME_RATE;
+    private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / GameProtocol.INPUT_FRAME_RATE;
+
+    private final int index;
+    private final BotConfig config;
+    private final LoadStatistics statistics;
+    private final Random random;
+    private final long stepNanos;
+    private final Map<Integer, int[]> items = new ConcurrentHashMap<>();
+    private final Map<Integer, String> itemTypes = new ConcurrentHashMap<>();
+    private volatile SocketGameClient client;
+    private volatile int playerId = 0;
+    private volatile long pendingAttackNanos = 0;
+    private volatile boolean dead = false;
+    private volatile int serverX;
+    private volatile int serverY;
+    private int x;
+    private int y;
+    private int targetX;
+    private int targetY;
+    private byte direction = GameProtocol.DIR_DOWN;
+    private final byte[] inputs = new byte[GameProtocol.MAX_INPUTS_PER_PACKET];
+    private int inputSeq = 0;
+    private long frameClockNanos = 0;
+    private int stuckFrames = 0;
+    private long nextAttackNanos = 0;
+    private long countedBytesIn = 0;
+    private long countedBytesOut = 0;
+    private int requestedItem = -1;
+
+    public LoadBot(int index, BotConfig config, LoadStatistics statistics) {
+        this.index = index;
+        this.config = config;
+        this.statistics = statistics;
+        this.random = new Random(31L * index + System.nanoTime());
+        this.stepNanos = TimeUnit.SECONDS.toNanos(1) / config.getUpdateRate();
+    }
+
+    public void run(long deadlineNanos) {
+        long nextStep = System.nanoTime();
+        try {
+            while (System.nanoTime() < deadlineNanos && !Thread.currentThread().isInterrupted()) {
+                if (client == null || !client.isConnected()) {
+                    if (client != null) {
+                        closeClient();
+                        if (!config.isRespawnEnabled()) {
+                            return;
+                        }
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    }
+                    if (!connect()) {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                        continue;
+                    }
+                    nextStep = System.nanoTime();
+                }
+                step(System.nanoTime());
+                nextStep += stepNanos;
+                long sleep = nextStep - System.nanoTime();
+                if (sleep > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } else {
+                    nextStep = System.nanoTime();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeClient();
+        }
+    }
+
+    private boolean connect() {
+        try {
+            SocketGameClient connection = new SocketGameClient(config.getHost(), config.getPort(), config.getRoom());
+            playerId = 0;
+            dead = false;
+            pendingAttackNanos = 0;
+            requestedItem = -1;
+            inputSeq = 0;
+            frameClockNanos = System.nanoTime();
+            items.clear();
+            itemTypes.clear();
+            countedBytesIn = 0;
+            countedBytesOut = 0;
+            spawn();
+            connection.setPacketListener(this);
+            client = connection;
+            connection.startReceiving();
+            statistics.recordConnect();
+            return true;
+        } catch (IOException e) {
+            statistics.recordConnectFailure();
+            return false;
+        }
+    }
+
+    private void closeClient() {
+        SocketGameClient connection = client;
+        if (connection == null) {
+            return;
+        }
+        client = null;
+        connection.disconnect();
+        recordBytes(connection);
+        statistics.recordDisconnect();
+    }
+
+    // The server places every player at the shared spawn point; bots walk to their area from there.
+    private void spawn() {
+        x = serverX = GameProtocol.SPAWN_X;
+        y = serverY = GameProtocol.SPAWN_Y;
+        stuckFrames = 0;
+        pickTarget(config.isPickupEnabled());
+    }
+
+    private void step(long now) {
+        SocketGameClient connection = client;
+        if (dead) {
+            // The server kicks a dead player rather than reviving it, so a kill ends this session;
+            // run() reconnects the bot when --respawn is on.
+            connection.disconnect();
+            recordBytes(connection);
+            return;
+        }
+        if (playerId == 0) {
+            recordBytes(connection);
+            return;
+        }
+        if (config.getBehaviour() != BotBehaviour.IDLE) {
+            move(connection, now);
+        }
+        if (config.isPickupEnabled()) {
+            tryPickup(connection);
+        }
+        attack(connection, now);
+        recordBytes(connection);
+    }
+
+    // Sends the keys held for every 60 Hz frame since the previous step, like NetworkPlayer does, so the
+    // server runs the same input, movement and collision path for bots as for real clients.
+    private void move(SocketGameClient connection, long now) {
+        int frames = (int) Math.min((now - frameClockNanos) / FRAME_NANOS, inputs.length);
+        frameClockNanos = frames == inputs.length ? now : frameClockNanos + frames * FRAME_NANOS;
+        if (frames == 0) {
+            return;
+        }
+        int lastX = x;
+        int lastY = y;
+        x = serverX;
+        y = serverY;
+        stuckFrames = x == lastX && y == lastY ? stuckFrames + frames : 0;
+        if (stuckFrames >= STUCK_FRAMES) {
+            // Blocked by a wall or door on the server; an item behind it would keep the bot here forever.
+            stuckFrames = 0;
+            pickTarget(false);
+        }
+        int predictedX = x;
+        int predictedY = y;
+        for (int i = 0; i < frames; i++) {
+            int dx = targetX - predictedX;
+            int dy = targetY - predictedY;
+            if (Math.abs(dx) <= ARRIVE_DISTANCE && Math.abs(dy) <= ARRIVE_DISTANCE) {
+                pickTarget(config.isPickupEnabled());
+                dx = targetX - predictedX;
+                dy = targetY - predictedY;
+            }
+            byte mask;
+            if (Math.abs(dx) > Math.abs(dy)) {
+                mask = dx > 0 ? GameProtocol.INPUT_RIGHT : GameProtocol.INPUT_LEFT;
+                direction = dx > 0 ? GameProtocol.DIR_RIGHT : GameProtocol.DIR_LEFT;
+                predictedX = clampX(predictedX + Integer.signum(dx) * GameProtocol.PLAYER_SPEED);
+            } else {
+                mask = dy > 0 ? GameProtocol.INPUT_DOWN : GameProtocol.INPUT_UP;
+                direction = dy > 0 ? GameProtocol.DIR_DOWN : GameProtocol.DIR_UP;
+                predictedY = clampY(predictedY + Integer.signum(dy) * GameProtocol.PLAYER_SPEED);
+            }
+            inputs[i] = mask;
+        }
+        connection.sendPlayerInput(inputSeq, inputs, frames);
+        inputSeq = (inputSeq + frames) & GameProtocol.SEQUENCE_MASK;
+    }
+
+    private void pickTarget(boolean preferItems) {
+        int[] item = preferItems ? nearestItem() : null;
+        if (item != null) {
+            targetX = item[0];
+            targetY = item[1];
+        } else if (config.getBehaviour() == BotBehaviour.SWARM) {
+            targetX = clampX(SWARM_CENTER_X + random.nextInt(2 * SWARM_SPREAD + 1) - SWARM_SPREAD);
+            targetY = clampY(SWARM_CENTER_Y + random.nextInt(2 * SWARM_SPREAD + 1) - SWARM_SPREAD);
+        } else {
+            targetX = clampX(x + random.nextInt(20 * 48 + 1) - 10 * 48);
+            targetY = clampY(y + random.nextInt(20 * 48 + 1) - 10 * 48);
+        }
+    }
+
+    private int[] nearestItem() {
+        int[] nearest = null;
+        long best = Long.MAX_VALUE;
+        for (Map.Entry<Integer, int[]> entry : items.entrySet()) {
+            if ("Door".equals(itemTypes.get(entry.getKey()))) {
+                continue;
+            }
+            int[] item = entry.getValue();
+            if (Math.abs(item[0] - x) <= PICKUP_DISTANCE && Math.abs(item[1] - y) <= PICKUP_DISTANCE) {
+                continue;
+            }
+            long dx = item[0] - x;
+            long dy = item[1] - y;
+            long distance = dx * dx + dy * dy;
+            if (distance < best) {
+                best = distance;
+                nearest = item;
+            }
+        }
+        return nearest;
+    }
+
+    private void tryPickup(SocketGameClient connection) {
+        for (Map.Entry<Integer, int[]> entry : items.entrySet()) {
+            int itemId = entry.getKey();
+            int[] item = entry.getValue();
+            String type = itemTypes.get(itemId);
+            if (itemId == requestedItem || type == null || "Door".equals(type)) {
+                continue;
+            }
+            if (Math.abs(item[0] - x) <= PICKUP_DISTANCE && Math.abs(item[1] - y) <= PICKUP_DISTANCE) {
+                requestedItem = itemId;
+                connection.sendItemPickup(playerId, itemId, type, item[0], item[1], item[2]);
+                return;
+            }
+        }
+    }
+
+    private void attack(SocketGameClient connection, long now) {
+        int interval = config.getAttackIntervalMillis();
+        if (interval <= 0) {
+            return;
+        }
+        long pending = pendingAttackNanos;
+        if (pending != 0) {
+            if (now - pending < ATTACK_TIMEOUT_NANOS) {
+                return;
+            }
+            statistics.recordAttackTimeout();
+            pendingAttackNanos = 0;
+        }
+        if (now < nextAttackNanos) {
+            return;
+        }
+        nextAttackNanos = now + TimeUnit.MILLISECONDS.toNanos(interval / 2 + random.nextInt(interval + 1));
+        pendingAttackNanos = System.nanoTime();
+        connection.sendAttack(GameProtocol.byteToDirection(direction), x, y);
+        statistics.recordAttack();
+    }
+
+    private void recordBytes(SocketGameClient connection) {
+        long in = connection.getBytesReceived();
+        long out = connection.getBytesSent();
+        statistics.recordBytes(in - countedBytesIn, out - countedBytesOut);
+        countedBytesIn = in;
+        countedBytesOut = out;
+    }
+
+    private static int clampX(int value) {
+        return Math.max(GameProtocol.MIN_X, Math.min(value, GameProtocol.MAX_X));
+    }
+
+    private static int clampY(int value) {
+        return Math.max(GameProtocol.MIN_Y, Math.min(value, GameProtocol.MAX_Y));
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public void onHandshake(GamePacket packet) {
+        playerId = packet.getPlayerId();
+    }
+
+    @Override
+    public void onAttack(GamePacket packet) {
+        long sent = pendingAttackNanos;
+        if (sent != 0 && packet.getPlayerId() == playerId) {
+            pendingAttackNanos = 0;
+            statistics.recordRoundTrip(System.nanoTime() - sent);
+        }
+    }
+
+    @Override
+    public void onPlayerDeath(GamePacket packet) {
+        if (packet.getPlayerId() == playerId) {
+            dead = true;
+            pendingAttackNanos = 0;
+            statistics.recordDeath();
+        }
+    }
+
+    @Override
+    public void onWorldState(GamePacket packet) {
+        statistics.recordSnapshot();
+        if (packet.getPlayersData() == null) {
+            return;
+        }
+        for (GamePacket.PlayerData player : packet.getPlayersData()) {
+            if (player.getId() == playerId) {
+                serverX = player.getX();
+                serverY = player.getY();
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void onItemPickup(GamePacket packet) {
+        if (packet.getPlayerId() == 0) {
+            items.put(packet.getItemId(), new int[]{packet.getItemX(), packet.getItemY(), packet.getExperienceGained()});
+            itemTypes.put(packet.getItemId(), packet.getItemType());
+        } else if (packet.getPlayerId() == playerId) {
+            statistics.recordItemPicked();
+        }
+    }
+
+    @Override
+    public void onItemRemove(GamePacket packet) {
+        items.remove(packet.getItemId());
+        itemTypes.remove(packet.getItemId());
+    }
+
+    @Override public void onPlayerUpdate(GamePacket packet) {}
+    @Override public void onPlayerHit(GamePacket packet) {}
+    @Override public void onPlayerDamage(GamePacket packet) {}
+    @Override public void onPlayerJoin(GamePacket packet) {}
+    @Override public void onPlayerLeave(GamePacket packet) {}
+    @Override public void onPlayerExperience(GamePacket packet) {}
+    @Override public void onError(String message) {}
+    @Override public void onDisconnect() {}
+}
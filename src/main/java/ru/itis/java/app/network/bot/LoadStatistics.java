@@ -0,0 +1,103 @@
+package ru.itis.java.app.network.bot;
+
+import ru.itis.java.app.network.server.LatencyHistogram;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadStatistics {
+    private final long startNanos = System.nanoTime();
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+    private final LatencyHistogram intervalRoundTrip = new LatencyHistogram();
+    private final AtomicInteger connectedBots = new AtomicInteger();
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder attacks = new LongAdder();
+    private final LongAdder attackTimeouts = new LongAdder();
+    private final LongAdder deaths = new LongAdder();
+    private final LongAdder itemsPicked = new LongAdder();
+    private long lastReportNanos = startNanos;
+    private long lastSnapshots = 0;
+    private long lastBytesIn = 0;
+    private long lastBytesOut = 0;
+
+    void recordConnect() {
+        connects.increment();
+        connectedBots.incrementAndGet();
+    }
+
+    void recordConnectFailure() {
+        connectFailures.increment();
+    }
+
+    void recordDisconnect() {
+        disconnects.increment();
+        connectedBots.decrementAndGet();
+    }
+
+    void recordRoundTrip(long nanos) {
+        roundTrip.record(nanos);
+        intervalRoundTrip.record(nanos);
+    }
+
+    void recordSnapshot() { snapshots.increment(); }
+    void recordBytes(long in, long out) { bytesIn.add(in); bytesOut.add(out); }
+    void recordAttack() { attacks.increment(); }
+    void recordAttackTimeout() { attackTimeouts.increment(); }
+    void recordDeath() { deaths.increment(); }
+    void recordItemPicked() { itemsPicked.increment(); }
+
+    public synchronized String intervalReport() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastReportNanos) / 1e9);
+        long snapshotCount = snapshots.sum();
+        long in = bytesIn.sum();
+        long out = bytesOut.sum();
+        int bots = Math.max(1, connectedBots.get());
+        String report = String.format(Locale.ROOT,
+                "[%4.0f с] ботов %d, RTT p50=%.1f p90=%.1f p99=%.1f max=%.1f мс (%d), " +
+                        "снимков %.1f/с на бота, вход %.1f КБ/с (%.2f на бота), выход %.1f КБ/с (%.2f на бота)",
+                (now - startNanos) / 1e9, connectedBots.get(),
+                millis(intervalRoundTrip.getValueAtPercentile(50)),
+                millis(intervalRoundTrip.getValueAtPercentile(90)),
+                millis(intervalRoundTrip.getValueAtPercentile(99)),
+                millis(intervalRoundTrip.getMax()), intervalRoundTrip.getCount(),
+                (snapshotCount - lastSnapshots) / seconds / bots,
+                (in - lastBytesIn) / 1024.0 / seconds, (in - lastBytesIn) / 1024.0 / seconds / bots,
+                (out - lastBytesOut) / 1024.0 / seconds, (out - lastBytesOut) / 1024.0 / seconds / bots);
+        intervalRoundTrip.reset();
+        lastReportNanos = now;
+        lastSnapshots = snapshotCount;
+        lastBytesIn = in;
+        lastBytesOut = out;
+        return report;
+    }
+
+    public String summary() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        return String.format(Locale.ROOT,
+                "Итого за %.0f с: подключений %d (ошибок %d, обрывов %d), атак %d (без ответа %d), смертей %d, предметов %d%n" +
+                        "RTT p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f мс, среднее %.1f мс (%d замеров)%n" +
+                        "снимков %d (%.1f/с), вход %.1f КБ/с, выход %.1f КБ/с",
+                seconds, connects.sum(), connectFailures.sum(), disconnects.sum(),
+                attacks.sum(), attackTimeouts.sum(), deaths.sum(), itemsPicked.sum(),
+                millis(roundTrip.getValueAtPercentile(50)),
+                millis(roundTrip.getValueAtPercentile(90)),
+                millis(roundTrip.getValueAtPercentile(99)),
+                millis(roundTrip.getValueAtPercentile(99.9)),
+                millis(roundTrip.getMax()), roundTrip.getMean() / 1_000_000.0, roundTrip.getCount(),
+                snapshots.sum(), snapshots.sum() / seconds,
+                bytesIn.sum() / 1024.0 / seconds, bytesOut.sum() / 1024.0 / seconds);
+    }
+
+    public LatencyHistogram getRoundTrip() { return roundTrip; }
+    public int getConnectedBots() { return connectedBots.get(); }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,81 @@
+package ru.itis.java.app.network.bot;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class LoadTest {
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Использование: java -cp pleasure-island-server.jar ru.itis.java.app.network.bot.LoadTest [параметры]",
+            "  --host=localhost        адрес сервера",
+            "  --port=1234             порт сервера",
+            "  --room=0                номер комнаты",
+            "  --bots=10               число ботов",
+            "  --duration=60           длительность теста в секундах",
+            "  --ramp=50               пауза между подключениями ботов, мс",
+            "  --behaviour=wander      idle, wander или swarm (все боты в одной точке карты)",
+            "  --update-rate=30        отправок ввода в секунду",
+            "  --attack-interval=1000  средний интервал атак, мс, 0 — без атак",
+            "  --pickup=true           подбирать предметы",
+            "  --respawn=true          переподключаться после смерти или обрыва",
+            "  --report-interval=5     период отчёта в секундах",
+            "  --executor=virtual      virtual или cached",
+            "  --verbose               не скрывать журнал клиентов");
+
+    public static void main(String[] args) throws InterruptedException {
+        BotConfig config;
+        try {
+            config = BotConfig.fromArgs(args);
+            config.getBots();
+            config.getDurationSeconds();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (config.getBoolean("help", false)) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        PrintStream report = System.out;
+        if (!config.isVerbose()) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+        report.println("Нагрузочный тест: " + config.getBots() + " ботов (" + config.getBehaviour().name().toLowerCase()
+                + ") -> " + config.getHost() + ":" + config.getPort() + ", комната " + config.getRoom()
+                + ", " + config.getDurationSeconds() + " с");
+
+        LoadStatistics statistics = new LoadStatistics();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> report.println(statistics.intervalReport()),
+                config.getReportIntervalSeconds(), config.getReportIntervalSeconds(), TimeUnit.SECONDS);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+        ExecutorService bots = config.getExecutor().create("load-bot");
+        for (int i = 0; i < config.getBots() && System.nanoTime() < deadline; i++) {
+            LoadBot bot = new LoadBot(i, config, statistics);
+            bots.execute(() -> bot.run(deadline));
+            if (config.getRampMillis() > 0) {
+                Thread.sleep(config.getRampMillis());
+            }
+        }
+
+        bots.shutdown();
+        long remaining = deadline - System.nanoTime();
+        if (!bots.awaitTermination(Math.max(0, remaining) + TimeUnit.SECONDS.toNanos(5), TimeUnit.NANOSECONDS)) {
+            bots.shutdownNow();
+        }
+        reporter.shutdownNow();
+        report.println(statistics.summary());
+        System.setOut(report);
+    }
+}
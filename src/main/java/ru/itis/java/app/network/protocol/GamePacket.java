@@ -1,6 +1,7 @@
 package ru.itis.java.app.network.protocol;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class GamePacket {
@@ -31,6 +32,16 @@ public class GamePacket {
     private int itemY;
     private int experienceGained;
     private int totalExperience;
+    private int protocolVersion = GameProtocol.PROTOCOL_V1;
+    private int snapshotSeq = -1;
+    private int baselineSeq = -1;
+    private int inputSeq = -1;
+    private int inputAck = -1;
+    private int roomId = -1;
+    private int[] removedPlayerIds = new int[0];
+    private int removedCount;
+    private byte[] inputMasks = new byte[0];
+    private int inputCount;
 
     public static class PlayerData {
         private int id;
@@ -45,6 +56,7 @@ public class GamePacket {
         private int experience;
         private int experienceToNextLevel;
         private byte spriteNum;
+        private byte changeMask = GameProtocol.DELTA_ALL;
 
         public PlayerData() {}
 
@@ -92,6 +104,25 @@ public class GamePacket {
         public void setExperienceToNextLevel(int exp) { this.experienceToNextLevel = exp; }
         public byte getSpriteNum() { return spriteNum; }
         public void setSpriteNum(byte spriteNum) { this.spriteNum = spriteNum; }
+        public byte getChangeMask() { return changeMask; }
+        public void setChangeMask(byte changeMask) { this.changeMask = changeMask; }
+
+        public void copyFrom(PlayerData other) {
+            id = other.id;
+            x = other.x;
+            y = other.y;
+            direction = other.direction;
+            health = other.health;
+            maxHealth = other.maxHealth;
+            isDead = other.isDead;
+            level = other.level;
+            damage = other.damage;
+            experience = other.experience;
+            experienceToNextLevel = other.experienceToNextLevel;
+            spriteNum = other.spriteNum;
+            changeMask = GameProtocol.DELTA_ALL;
+        }
+
     }
 
     public GamePacket() {
@@ -108,6 +139,43 @@ public class GamePacket {
         this.playerId = playerId;
     }
 
+    public void reset(byte type) {
+        this.type = type;
+        flags = 0;
+        playerId = 0;
+        x = 0;
+        y = 0;
+        direction = 0;
+        attackerId = 0;
+        targetId = 0;
+        attackX = 0;
+        attackY = 0;
+        pushX = 0;
+        pushY = 0;
+        damage = 0;
+        health = 0;
+        maxHealth = 0;
+        isDead = false;
+        level = 0;
+        experience = 0;
+        experienceToNextLevel = 0;
+        spriteNum = 0;
+        itemId = 0;
+        itemType = null;
+        itemX = 0;
+        itemY = 0;
+        experienceGained = 0;
+        totalExperience = 0;
+        protocolVersion = GameProtocol.PROTOCOL_V1;
+        snapshotSeq = -1;
+        baselineSeq = -1;
+        inputSeq = -1;
+        inputAck = -1;
+        roomId = -1;
+        removedCount = 0;
+        inputCount = 0;
+    }
+
     public byte getType() { return type; }
     public void setType(byte type) { this.type = type; }
     public byte getFlags() { return flags; }
@@ -167,6 +235,34 @@ public class GamePacket {
     public void setExperienceGained(int experienceGained) { this.experienceGained = experienceGained; }
     public int getTotalExperience() { return totalExperience; }
     public void setTotalExperience(int totalExperience) { this.totalExperience = totalExperience; }
+    public int getProtocolVersion() { return protocolVersion; }
+    public void setProtocolVersion(int protocolVersion) { this.protocolVersion = protocolVersion; }
+    public int getRoomId() { return roomId; }
+    public void setRoomId(int roomId) { this.roomId = roomId; }
+    public int getSnapshotSeq() { return snapshotSeq; }
+    public void setSnapshotSeq(int snapshotSeq) { this.snapshotSeq = snapshotSeq; }
+    public int getBaselineSeq() { return baselineSeq; }
+    public void setBaselineSeq(int baselineSeq) { this.baselineSeq = baselineSeq; }
+    public int getInputSeq() { return inputSeq; }
+    public void setInputSeq(int inputSeq) { this.inputSeq = inputSeq; }
+    public int getInputAck() { return inputAck; }
+    public void setInputAck(int inputAck) { this.inputAck = inputAck; }
+    public int getRemovedCount() { return removedCount; }
+    public int getRemovedPlayerId(int index) { return removedPlayerIds[index]; }
+    public void addRemovedPlayerId(int playerId) {
+        if (removedCount == removedPlayerIds.length) {
+            removedPlayerIds = Arrays.copyOf(removedPlayerIds, Math.max(4, removedCount * 2));
+        }
+        removedPlayerIds[removedCount++] = playerId;
+    }
+    public int getInputCount() { return inputCount; }
+    public byte getInputMask(int index) { return inputMasks[index]; }
+    public void addInputMask(byte mask) {
+        if (inputCount == inputMasks.length) {
+            inputMasks = Arrays.copyOf(inputMasks, Math.max(16, inputCount * 2));
+        }
+        inputMasks[inputCount++] = mask;
+    }
 
     public boolean hasFlag(byte flag) {
         return (flags & flag) != 0;
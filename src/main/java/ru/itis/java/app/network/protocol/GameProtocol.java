@@ -8,6 +8,10 @@ public class GameProtocol {
     public static final byte ESCAPED_END = (byte) 0x01;
     public static final byte ESCAPED_ESCAPE = (byte) 0x02;
 
+    public static final int PROTOCOL_V1 = 1;
+    public static final int PROTOCOL_V2 = 2;
+    public static final int PROTOCOL_VERSION = PROTOCOL_V2;
+
     public static final byte TYPE_HANDSHAKE = 0x01;
     public static final byte TYPE_PLAYER_UPDATE = 0x02;
     public static final byte TYPE_ATTACK = 0x03;
@@ -20,15 +24,41 @@ public class GameProtocol {
     public static final byte TYPE_ITEM_PICKUP = 0x0A;
     public static final byte TYPE_ITEM_REMOVE = 0x0B;
     public static final byte TYPE_PLAYER_EXPERIENCE = 0x0C;
+    public static final byte TYPE_SNAPSHOT_ACK = 0x0D;
+    public static final byte TYPE_WORLD_DELTA = 0x0E;
+    public static final byte TYPE_BUNDLE = 0x0F;
+    public static final byte TYPE_PLAYER_INPUT = 0x10;
 
     public static final byte FLAG_POSITION = 0x01;
     public static final byte FLAG_DIRECTION = 0x02;
+    public static final byte FLAG_PROTOCOL_VERSION = 0x04;
     public static final byte FLAG_HEALTH_EXTENDED = 0x08;
     public static final byte FLAG_LEVEL = 0x10;
     public static final byte FLAG_MAX_HEALTH = 0x20;
     public static final byte FLAG_SPRITE_NUM = 0x40;
     public static final byte FLAG_ITEM_PICKUP = (byte) 0x80;
     public static final byte FLAG_EXPERIENCE_UPDATE = 0x40;
+    public static final byte FLAG_SNAPSHOT_SEQ = (byte) 0x80;
+    public static final byte FLAG_ROOM = 0x40;
+    public static final byte FLAG_INPUT_SEQ = (byte) 0x80;
+    public static final byte FLAG_INPUT_ACK = 0x01;
+
+    public static final byte DELTA_POSITION = 0x01;
+    public static final byte DELTA_DIRECTION = 0x02;
+    public static final byte DELTA_HEALTH = 0x04;
+    public static final byte DELTA_LEVEL = 0x08;
+    public static final byte DELTA_SPRITE = 0x10;
+    public static final byte DELTA_DEAD = 0x20;
+    public static final byte DELTA_ALL = 0x3F;
+
+    public static final byte INPUT_UP = 0x01;
+    public static final byte INPUT_DOWN = 0x02;
+    public static final byte INPUT_LEFT = 0x04;
+    public static final byte INPUT_RIGHT = 0x08;
+    public static final byte INPUT_MOVE_MASK = 0x0F;
+    public static final int INPUT_FRAME_RATE = 60;
+    public static final int MAX_INPUT_RUN = 16;
+    public static final int MAX_INPUTS_PER_PACKET = 64;
 
     public static final byte DIR_UP = 0;
     public static final byte DIR_DOWN = 1;
@@ -36,6 +66,8 @@ public class GameProtocol {
     public static final byte DIR_RIGHT = 3;
     public static final int MAX_PLAYERS = 100;
     public static final int MAX_LEVEL = 100;
+    public static final int DEFAULT_ROOM = 0;
+    public static final int MAX_ROOM_ID = 0xFFFF;
 
     public static final int HANDSHAKE_SIZE = 12;
     public static final int MIN_PLAYER_UPDATE_SIZE = 6;
@@ -49,11 +81,25 @@ public class GameProtocol {
     public static final int ITEM_PICKUP_SIZE = 16;
     public static final int ITEM_REMOVE_SIZE = 10;
     public static final int PLAYER_EXPERIENCE_SIZE = 14;
+    public static final int SNAPSHOT_ACK_SIZE = 6;
+    public static final int ROOM_REQUEST_SIZE = 6;
+    public static final int WORLD_STATE_HEADER_SIZE = 7;
+    public static final int WORLD_STATE_PLAYER_SIZE = 20;
+    public static final int WORLD_DELTA_HEADER_SIZE = 10;
+    public static final int WORLD_DELTA_ENTRY_SIZE = 21;
+    public static final int INPUT_ACK_SIZE = 2;
+    public static final int PLAYER_INPUT_HEADER_SIZE = 7;
+    public static final int MAX_FRAME_SIZE = maxEscapedSize(worldDeltaSize(MAX_PLAYERS, MAX_PLAYERS));
+    public static final int MAX_BUNDLE_SIZE = MAX_FRAME_SIZE;
+    public static final int SEQUENCE_MASK = 0xFFFF;
 
     public static final int MIN_X = 0;
     public static final int MAX_X = 4800 - 48;
     public static final int MIN_Y = 0;
     public static final int MAX_Y = 3600 - 48;
+    public static final int SPAWN_X = 20 * 48;
+    public static final int SPAWN_Y = 7 * 48;
+    public static final int PLAYER_SPEED = 4;
 
     public static byte directionToByte(String direction) {
         if (direction == null) return DIR_DOWN;
@@ -89,9 +135,42 @@ public class GameProtocol {
         if (data[offset + length - 1] != PACKET_END) {
             return false;
         }
-        byte type = data[offset + 1];
-        boolean typeValid = type >= TYPE_HANDSHAKE && type <= TYPE_PLAYER_EXPERIENCE;
-        return typeValid;
+        return isValidType(data[offset + 1]);
+    }
+
+    public static boolean isValidType(byte type) {
+        return type >= TYPE_HANDSHAKE && type <= TYPE_WORLD_DELTA || type == TYPE_PLAYER_INPUT;
+    }
+
+    public static boolean isNewerSequence(int sequence, int than) {
+        int diff = (sequence - than) & SEQUENCE_MASK;
+        return diff != 0 && diff < 0x8000;
+    }
+
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public static int worldStateSize(int playerCount) {
+        return WORLD_STATE_HEADER_SIZE + playerCount * WORLD_STATE_PLAYER_SIZE + INPUT_ACK_SIZE;
+    }
+
+    public static int worldDeltaSize(int changedCount, int removedCount) {
+        return WORLD_DELTA_HEADER_SIZE + changedCount * WORLD_DELTA_ENTRY_SIZE + removedCount * 2 + INPUT_ACK_SIZE;
+    }
+
+    // A v2 bundle is one length-prefixed frame whose payload is the type byte followed by complete inner frames.
+    public static int bundleSize(int innerFramesLength) {
+        return varIntSize(innerFramesLength + 1) + 1 + innerFramesLength;
+    }
+
+    public static int maxEscapedSize(int rawSize) {
+        return rawSize < 2 ? rawSize : 2 + (rawSize - 2) * 2;
     }
 
     public static boolean validateCoordinates(int x, int y) {
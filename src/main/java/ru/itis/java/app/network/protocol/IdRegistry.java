@@ -0,0 +1,183 @@
+package ru.itis.java.app.network.protocol;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+// Ids on the wire are small unsigned shorts and 0 means "nobody", so values live in a plain array indexed by id.
+public class IdRegistry<T> implements Iterable<T> {
+    public static final int MAX_ID = 0xFFFF;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final int maxId;
+    private volatile AtomicReferenceArray<T> slots;
+    private volatile int size = 0;
+    private int highestAllocated = 0;
+    private boolean[] allocated;
+    private int[] freeIds;
+    private int freeCount = 0;
+
+    public IdRegistry() {
+        this(MAX_ID);
+    }
+
+    public IdRegistry(int maxId) {
+        this.maxId = Math.min(maxId, MAX_ID);
+        int capacity = Math.min(DEFAULT_CAPACITY, this.maxId + 1);
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.allocated = new boolean[capacity];
+        this.freeIds = new int[capacity];
+    }
+
+    public synchronized T add(IntFunction<? extends T> factory) {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else if (highestAllocated < maxId) {
+            id = highestAllocated + 1;
+        } else {
+            return null;
+        }
+        T value = factory.apply(id);
+        if (id > highestAllocated) {
+            highestAllocated = id;
+        }
+        ensureCapacity(id);
+        allocated[id] = true;
+        store(id, value);
+        return value;
+    }
+
+    public synchronized void put(int id, T value) {
+        if (id <= 0 || id > maxId) {
+            throw new IllegalArgumentException("Id out of range: " + id);
+        }
+        ensureCapacity(id);
+        store(id, value);
+    }
+
+    public T get(int id) {
+        AtomicReferenceArray<T> current = slots;
+        return id > 0 && id < current.length() ? current.get(id) : null;
+    }
+
+    public boolean contains(int id) {
+        return get(id) != null;
+    }
+
+    public synchronized T remove(int id) {
+        T previous = get(id);
+        if (previous != null) {
+            slots.set(id, null);
+            size--;
+        }
+        release(id);
+        return previous;
+    }
+
+    public synchronized boolean remove(int id, T value) {
+        if (value == null || get(id) != value) {
+            return false;
+        }
+        remove(id);
+        return true;
+    }
+
+    public synchronized void clear() {
+        AtomicReferenceArray<T> current = slots;
+        for (int id = 1; id < current.length(); id++) {
+            if (current.get(id) != null) {
+                current.set(id, null);
+                release(id);
+            }
+        }
+        size = 0;
+    }
+
+    // Walks ids in ascending order without an iterator: for (int id = next(1); id > 0; id = next(id + 1)).
+    public int next(int fromId) {
+        AtomicReferenceArray<T> current = slots;
+        for (int id = Math.max(1, fromId); id < current.length(); id++) {
+            if (current.get(id) != null) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        AtomicReferenceArray<T> current = slots;
+        return new Iterator<>() {
+            private int nextId = advance(1);
+
+            private int advance(int from) {
+                for (int id = from; id < current.length(); id++) {
+                    if (current.get(id) != null) {
+                        return id;
+                    }
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nextId > 0;
+            }
+
+            @Override
+            public T next() {
+                if (nextId < 0) {
+                    throw new NoSuchElementException();
+                }
+                T value = current.get(nextId);
+                nextId = advance(nextId + 1);
+                return value;
+            }
+        };
+    }
+
+    private void store(int id, T value) {
+        T previous = slots.getAndSet(id, value);
+        if (previous == null && value != null) {
+            size++;
+        } else if (previous != null && value == null) {
+            size--;
+        }
+    }
+
+    private void release(int id) {
+        if (id > 0 && id < allocated.length && allocated[id]) {
+            allocated[id] = false;
+            freeIds[freeCount++] = id;
+        }
+    }
+
+    private void ensureCapacity(int id) {
+        AtomicReferenceArray<T> current = slots;
+        if (id < current.length()) {
+            return;
+        }
+        int capacity = Math.min(Math.max(id + 1, current.length() * 2), maxId + 1);
+        AtomicReferenceArray<T> grown = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        boolean[] grownAllocated = new boolean[capacity];
+        System.arraycopy(allocated, 0, grownAllocated, 0, allocated.length);
+        int[] grownFree = new int[capacity];
+        System.arraycopy(freeIds, 0, grownFree, 0, freeCount);
+        allocated = grownAllocated;
+        freeIds = grownFree;
+        slots = grown;
+    }
+}
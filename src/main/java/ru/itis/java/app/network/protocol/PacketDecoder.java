@@ -156,141 +156,159 @@ public class PacketDecoder {
     }
 
     private GamePacket parseRawPacket(byte[] rawPacket) {
-        if (rawPacket.length < 4) {
-            return null;
+        GamePacket packet = new GamePacket();
+        return parsePacket(rawPacket, 0, rawPacket.length, packet) ? packet : null;
+    }
+
+    static boolean parsePacket(byte[] data, int base, int length, GamePacket packet) {
+        if (length < 4) {
+            return false;
         }
-        byte type = rawPacket[1];
-        byte flags = rawPacket[2];
-        GamePacket packet = new GamePacket(type);
+        byte type = data[base + 1];
+        byte flags = data[base + 2];
+        packet.reset(type);
         packet.setFlags(flags);
         try {
             int pos = 3;
             switch (type) {
                 case GameProtocol.TYPE_HANDSHAKE:
-                    if (rawPacket.length >= GameProtocol.HANDSHAKE_SIZE) {
-                        int playerId = ((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF);
+                    if ((flags & GameProtocol.FLAG_ROOM) != 0 && length >= GameProtocol.ROOM_REQUEST_SIZE) {
+                        packet.setRoomId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                        break;
+                    }
+                    if ((flags & GameProtocol.FLAG_PROTOCOL_VERSION) != 0 && length >= 7) {
+                        packet.setProtocolVersion(data[base + length - 2] & 0xFF);
+                        if (length < GameProtocol.HANDSHAKE_SIZE) {
+                            packet.setPlayerId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                        }
+                    }
+                    if (length >= GameProtocol.HANDSHAKE_SIZE) {
+                        int playerId = ((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF);
                         packet.setPlayerId(playerId);
                         pos += 2;
                         if ((flags & GameProtocol.FLAG_HEALTH_EXTENDED) != 0) {
-                            int health = ((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF);
-                            int maxHealth = ((rawPacket[pos + 2] & 0xFF) << 8) | (rawPacket[pos + 3] & 0xFF);
-                            int damage = ((rawPacket[pos + 4] & 0xFF) << 8) | (rawPacket[pos + 5] & 0xFF);
+                            int health = ((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF);
+                            int maxHealth = ((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF);
+                            int damage = ((data[base + pos + 4] & 0xFF) << 8) | (data[base + pos + 5] & 0xFF);
                             packet.setHealth(health);
                             packet.setMaxHealth(maxHealth);
                             packet.setDamage(damage);
                             pos += 6;
                         }
                         if ((flags & GameProtocol.FLAG_LEVEL) != 0) {
-                            packet.setLevel(rawPacket[pos] & 0xFF);
+                            packet.setLevel(data[base + pos] & 0xFF);
                             pos++;
                         }
                     }
                     break;
                 case GameProtocol.TYPE_PLAYER_UPDATE:
-                    if (rawPacket.length >= GameProtocol.MIN_PLAYER_UPDATE_SIZE) {
-                        int playerId = ((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF);
+                    if (length >= GameProtocol.MIN_PLAYER_UPDATE_SIZE) {
+                        int playerId = ((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF);
                         packet.setPlayerId(playerId);
                         pos += 2;
-                        if ((flags & GameProtocol.FLAG_POSITION) != 0 && pos + 3 < rawPacket.length - 1) {
-                            int x = ((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF);
-                            int y = ((rawPacket[pos + 2] & 0xFF) << 8) | (rawPacket[pos + 3] & 0xFF);
+                        if ((flags & GameProtocol.FLAG_POSITION) != 0 && pos + 3 < length - 1) {
+                            int x = ((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF);
+                            int y = ((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF);
                             packet.setX(x);
                             packet.setY(y);
                             pos += 4;
                         }
-                        if ((flags & GameProtocol.FLAG_DIRECTION) != 0 && pos < rawPacket.length - 1) {
-                            packet.setDirection(rawPacket[pos]);
+                        if ((flags & GameProtocol.FLAG_DIRECTION) != 0 && pos < length - 1) {
+                            packet.setDirection(data[base + pos]);
+                            pos++;
+                        }
+                        if ((flags & GameProtocol.FLAG_SPRITE_NUM) != 0 && pos < length - 1) {
+                            packet.setSpriteNum(data[base + pos]);
                             pos++;
                         }
-                        if ((flags & GameProtocol.FLAG_SPRITE_NUM) != 0 && pos < rawPacket.length - 1) {
-                            packet.setSpriteNum(rawPacket[pos]);
+                        if ((flags & GameProtocol.FLAG_INPUT_SEQ) != 0 && pos + 1 < length - 1) {
+                            packet.setInputSeq(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
                         }
                     }
                     break;
                 case GameProtocol.TYPE_ATTACK:
-                    if (rawPacket.length >= GameProtocol.ATTACK_SIZE) {
-                        int playerId = ((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF);
+                    if (length >= GameProtocol.ATTACK_SIZE) {
+                        int playerId = ((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF);
                         packet.setPlayerId(playerId);
-                        packet.setDirection(rawPacket[pos + 2]);
-                        packet.setAttackX(((rawPacket[pos + 3] & 0xFF) << 8) | (rawPacket[pos + 4] & 0xFF));
-                        packet.setAttackY(((rawPacket[pos + 5] & 0xFF) << 8) | (rawPacket[pos + 6] & 0xFF));
+                        packet.setDirection(data[base + pos + 2]);
+                        packet.setAttackX(((data[base + pos + 3] & 0xFF) << 8) | (data[base + pos + 4] & 0xFF));
+                        packet.setAttackY(((data[base + pos + 5] & 0xFF) << 8) | (data[base + pos + 6] & 0xFF));
                     }
                     break;
                 case GameProtocol.TYPE_PLAYER_HIT:
-                    if (rawPacket.length >= GameProtocol.PLAYER_HIT_SIZE) {
-                        packet.setAttackerId(((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF));
-                        packet.setTargetId(((rawPacket[pos + 2] & 0xFF) << 8) | (rawPacket[pos + 3] & 0xFF));
-                        packet.setPushX(((rawPacket[pos + 4] & 0xFF) << 8) | (rawPacket[pos + 5] & 0xFF));
-                        packet.setPushY(((rawPacket[pos + 6] & 0xFF) << 8) | (rawPacket[pos + 7] & 0xFF));
+                    if (length >= GameProtocol.PLAYER_HIT_SIZE) {
+                        packet.setAttackerId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                        packet.setTargetId(((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF));
+                        packet.setPushX(((data[base + pos + 4] & 0xFF) << 8) | (data[base + pos + 5] & 0xFF));
+                        packet.setPushY(((data[base + pos + 6] & 0xFF) << 8) | (data[base + pos + 7] & 0xFF));
                     }
                     break;
                 case GameProtocol.TYPE_PLAYER_DAMAGE:
-                    if (rawPacket.length >= GameProtocol.PLAYER_DAMAGE_SIZE) {
-                        packet.setAttackerId(((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF));
-                        packet.setTargetId(((rawPacket[pos + 2] & 0xFF) << 8) | (rawPacket[pos + 3] & 0xFF));
+                    if (length >= GameProtocol.PLAYER_DAMAGE_SIZE) {
+                        packet.setAttackerId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                        packet.setTargetId(((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF));
                         if ((flags & GameProtocol.FLAG_HEALTH_EXTENDED) != 0) {
-                            packet.setDamage(((rawPacket[pos + 4] & 0xFF) << 8) | (rawPacket[pos + 5] & 0xFF));
-                            packet.setHealth(((rawPacket[pos + 6] & 0xFF) << 8) | (rawPacket[pos + 7] & 0xFF));
-                            packet.setMaxHealth(((rawPacket[pos + 8] & 0xFF) << 8) | (rawPacket[pos + 9] & 0xFF));
-                            packet.setLevel(rawPacket[pos + 10] & 0xFF);
+                            packet.setDamage(((data[base + pos + 4] & 0xFF) << 8) | (data[base + pos + 5] & 0xFF));
+                            packet.setHealth(((data[base + pos + 6] & 0xFF) << 8) | (data[base + pos + 7] & 0xFF));
+                            packet.setMaxHealth(((data[base + pos + 8] & 0xFF) << 8) | (data[base + pos + 9] & 0xFF));
+                            packet.setLevel(data[base + pos + 10] & 0xFF);
                         } else {
-                            packet.setDamage(rawPacket[pos + 4] & 0xFF);
-                            packet.setHealth(((rawPacket[pos + 5] & 0xFF) << 8) | (rawPacket[pos + 6] & 0xFF));
+                            packet.setDamage(data[base + pos + 4] & 0xFF);
+                            packet.setHealth(((data[base + pos + 5] & 0xFF) << 8) | (data[base + pos + 6] & 0xFF));
                         }
                     }
                     break;
                 case GameProtocol.TYPE_PLAYER_DEATH:
-                    if (rawPacket.length >= GameProtocol.PLAYER_DEATH_SIZE) {
-                        packet.setPlayerId(((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF));
-                        packet.setAttackerId(((rawPacket[pos + 2] & 0xFF) << 8) | (rawPacket[pos + 3] & 0xFF));
+                    if (length >= GameProtocol.PLAYER_DEATH_SIZE) {
+                        packet.setPlayerId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                        packet.setAttackerId(((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF));
                     }
                     break;
                 case GameProtocol.TYPE_ITEM_PICKUP:
-                    if (rawPacket.length >= GameProtocol.ITEM_PICKUP_SIZE) {
-                        int playerId = ((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF);
-                        int itemId = ((rawPacket[pos + 2] & 0xFF) << 8) | (rawPacket[pos + 3] & 0xFF);
+                    if (length >= GameProtocol.ITEM_PICKUP_SIZE) {
+                        int playerId = ((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF);
+                        int itemId = ((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF);
                         packet.setPlayerId(playerId);
                         packet.setItemId(itemId);
                         pos += 4;
 
-                        int typeLength = rawPacket[pos] & 0xFF;
+                        int typeLength = data[base + pos] & 0xFF;
                         pos++;
-                        if (typeLength > 0 && pos + typeLength < rawPacket.length - 1) {
-                            byte[] typeBytes = new byte[typeLength];
-                            System.arraycopy(rawPacket, pos, typeBytes, 0, typeLength);
-                            packet.setItemType(new String(typeBytes, "UTF-8"));
+                        if (typeLength > 0 && pos + typeLength < length - 1) {
+                            packet.setItemType(decodeItemType(data, base + pos, typeLength));
                             pos += typeLength;
                         }
 
-                        if (pos + 4 < rawPacket.length - 1) {
-                            packet.setItemX(((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF));
-                            packet.setItemY(((rawPacket[pos + 2] & 0xFF) << 8) | (rawPacket[pos + 3] & 0xFF));
+                        if (pos + 4 < length - 1) {
+                            packet.setItemX(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                            packet.setItemY(((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF));
                             pos += 4;
                         }
 
-                        if (pos + 1 < rawPacket.length - 1) {
-                            packet.setExperienceGained(((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF));
+                        if (pos + 1 < length - 1) {
+                            packet.setExperienceGained(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
                         }
                     }
                     break;
                 case GameProtocol.TYPE_ITEM_REMOVE:
-                    if (rawPacket.length >= GameProtocol.ITEM_REMOVE_SIZE) {
-                        packet.setItemId(((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF));
+                    if (length >= GameProtocol.ITEM_REMOVE_SIZE) {
+                        packet.setItemId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
                     }
                     break;
                 case GameProtocol.TYPE_PLAYER_EXPERIENCE:
-                    if (rawPacket.length >= GameProtocol.PLAYER_EXPERIENCE_SIZE) {
-                        packet.setPlayerId(((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF));
-                        packet.setExperience(((rawPacket[pos + 2] & 0xFF) << 8) | (rawPacket[pos + 3] & 0xFF));
-                        packet.setTotalExperience(((rawPacket[pos + 4] & 0xFF) << 8) | (rawPacket[pos + 5] & 0xFF));
-                        packet.setLevel(rawPacket[pos + 6] & 0xFF);
+                    if (length >= GameProtocol.PLAYER_EXPERIENCE_SIZE) {
+                        packet.setPlayerId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                        packet.setExperience(((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF));
+                        packet.setTotalExperience(((data[base + pos + 4] & 0xFF) << 8) | (data[base + pos + 5] & 0xFF));
+                        packet.setLevel(data[base + pos + 6] & 0xFF);
                     }
                     break;
                 case GameProtocol.TYPE_WORLD_STATE:
-                    if (pos < rawPacket.length - 1) {
-                        int playerCount = Math.min(rawPacket[pos] & 0xFF, GameProtocol.MAX_PLAYERS);
+                    if (pos < length - 1) {
+                        int playerCount = Math.min(data[base + pos] & 0xFF, GameProtocol.MAX_PLAYERS);
                         pos++;
-                        List<GamePacket.PlayerData> players = new ArrayList<>();
+                        List<GamePacket.PlayerData> players = packet.getPlayersData();
+                        int parsedCount = 0;
                         boolean hasExtendedData = (flags & GameProtocol.FLAG_HEALTH_EXTENDED) != 0;
                         boolean hasLevelData = (flags & GameProtocol.FLAG_LEVEL) != 0;
                         boolean hasSpriteNumData = (flags & GameProtocol.FLAG_SPRITE_NUM) != 0;
@@ -301,80 +319,217 @@ public class PacketDecoder {
                             playerDataSize = 10;
                         }
                         for (int j = 0; j < playerCount; j++) {
-                            if (pos + playerDataSize - 1 >= rawPacket.length - 1) break;
-                            GamePacket.PlayerData playerData = new GamePacket.PlayerData();
-                            playerData.setId(((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF));
-                            playerData.setX(((rawPacket[pos + 2] & 0xFF) << 8) | (rawPacket[pos + 3] & 0xFF));
-                            playerData.setY(((rawPacket[pos + 4] & 0xFF) << 8) | (rawPacket[pos + 5] & 0xFF));
-                            playerData.setDirection(rawPacket[pos + 6]);
+                            if (pos + playerDataSize - 1 >= length - 1) break;
+                            GamePacket.PlayerData playerData;
+                            if (parsedCount < players.size()) {
+                                playerData = players.get(parsedCount);
+                            } else {
+                                playerData = new GamePacket.PlayerData();
+                                players.add(playerData);
+                            }
+                            playerData.setId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                            playerData.setChangeMask(GameProtocol.DELTA_ALL);
+                            playerData.setX(((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF));
+                            playerData.setY(((data[base + pos + 4] & 0xFF) << 8) | (data[base + pos + 5] & 0xFF));
+                            playerData.setDirection(data[base + pos + 6]);
                             if (hasExtendedData) {
-                                playerData.setHealth(((rawPacket[pos + 7] & 0xFF) << 8) | (rawPacket[pos + 8] & 0xFF));
-                                playerData.setMaxHealth(((rawPacket[pos + 9] & 0xFF) << 8) | (rawPacket[pos + 10] & 0xFF));
-                                playerData.setLevel(rawPacket[pos + 11] & 0xFF);
-                                playerData.setDamage(((rawPacket[pos + 12] & 0xFF) << 8) | (rawPacket[pos + 13] & 0xFF));
-                                playerData.setExperience(((rawPacket[pos + 14] & 0xFF) << 8) | (rawPacket[pos + 15] & 0xFF));
-                                playerData.setExperienceToNextLevel(((rawPacket[pos + 16] & 0xFF) << 8) | (rawPacket[pos + 17] & 0xFF));
+                                playerData.setHealth(((data[base + pos + 7] & 0xFF) << 8) | (data[base + pos + 8] & 0xFF));
+                                playerData.setMaxHealth(((data[base + pos + 9] & 0xFF) << 8) | (data[base + pos + 10] & 0xFF));
+                                playerData.setLevel(data[base + pos + 11] & 0xFF);
+                                playerData.setDamage(((data[base + pos + 12] & 0xFF) << 8) | (data[base + pos + 13] & 0xFF));
+                                playerData.setExperience(((data[base + pos + 14] & 0xFF) << 8) | (data[base + pos + 15] & 0xFF));
+                                playerData.setExperienceToNextLevel(((data[base + pos + 16] & 0xFF) << 8) | (data[base + pos + 17] & 0xFF));
                                 if (hasSpriteNumData) {
-                                    playerData.setSpriteNum(rawPacket[pos + 18]);
-                                    playerData.setDead(rawPacket[pos + 19] != 0);
+                                    playerData.setSpriteNum(data[base + pos + 18]);
+                                    playerData.setDead(data[base + pos + 19] != 0);
                                     pos += 20;
                                 } else {
                                     playerData.setSpriteNum((byte)1);
-                                    playerData.setDead(rawPacket[pos + 18] != 0);
+                                    playerData.setDead(data[base + pos + 18] != 0);
                                     pos += 19;
                                 }
                             } else {
-                                playerData.setHealth(rawPacket[pos + 7] & 0xFF);
+                                playerData.setHealth(data[base + pos + 7] & 0xFF);
                                 playerData.setMaxHealth(100);
                                 playerData.setLevel(1);
                                 playerData.setDamage(25);
                                 playerData.setExperience(0);
                                 playerData.setExperienceToNextLevel(100);
                                 if (hasSpriteNumData) {
-                                    playerData.setSpriteNum(rawPacket[pos + 8]);
-                                    playerData.setDead(rawPacket[pos + 9] != 0);
+                                    playerData.setSpriteNum(data[base + pos + 8]);
+                                    playerData.setDead(data[base + pos + 9] != 0);
                                     pos += 10;
                                 } else {
                                     playerData.setSpriteNum((byte)1);
-                                    playerData.setDead(rawPacket[pos + 8] != 0);
+                                    playerData.setDead(data[base + pos + 8] != 0);
                                     pos += 9;
                                 }
                             }
-                            players.add(playerData);
+                            parsedCount++;
+                        }
+                        while (players.size() > parsedCount) {
+                            players.remove(players.size() - 1);
+                        }
+                        if ((flags & GameProtocol.FLAG_SNAPSHOT_SEQ) != 0 && pos + 1 < length - 1) {
+                            packet.setSnapshotSeq(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                            pos += 2;
+                        }
+                        if ((flags & GameProtocol.FLAG_INPUT_ACK) != 0 && pos + 1 < length - 1) {
+                            packet.setInputAck(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
                         }
-                        packet.setPlayersData(players);
+                    }
+                    break;
+                case GameProtocol.TYPE_WORLD_DELTA:
+                    if (length >= GameProtocol.WORLD_DELTA_HEADER_SIZE) {
+                        packet.setSnapshotSeq(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                        packet.setBaselineSeq(((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF));
+                        int changedCount = Math.min(data[base + pos + 4] & 0xFF, GameProtocol.MAX_PLAYERS);
+                        pos += 5;
+                        List<GamePacket.PlayerData> players = packet.getPlayersData();
+                        int parsedCount = 0;
+                        for (int j = 0; j < changedCount; j++) {
+                            if (pos + 3 > length - 1) return false;
+                            byte mask = data[base + pos + 2];
+                            if (pos + 3 + deltaEntrySize(mask) > length - 1) return false;
+                            GamePacket.PlayerData playerData;
+                            if (parsedCount < players.size()) {
+                                playerData = players.get(parsedCount);
+                            } else {
+                                playerData = new GamePacket.PlayerData();
+                                players.add(playerData);
+                            }
+                            playerData.setId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                            playerData.setChangeMask(mask);
+                            pos += 3;
+                            if ((mask & GameProtocol.DELTA_POSITION) != 0) {
+                                playerData.setX(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                                playerData.setY(((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF));
+                                pos += 4;
+                            }
+                            if ((mask & GameProtocol.DELTA_DIRECTION) != 0) {
+                                playerData.setDirection(data[base + pos]);
+                                pos++;
+                            }
+                            if ((mask & GameProtocol.DELTA_HEALTH) != 0) {
+                                playerData.setHealth(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                                playerData.setMaxHealth(((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF));
+                                pos += 4;
+                            }
+                            if ((mask & GameProtocol.DELTA_LEVEL) != 0) {
+                                playerData.setLevel(data[base + pos] & 0xFF);
+                                playerData.setDamage(((data[base + pos + 1] & 0xFF) << 8) | (data[base + pos + 2] & 0xFF));
+                                playerData.setExperience(((data[base + pos + 3] & 0xFF) << 8) | (data[base + pos + 4] & 0xFF));
+                                playerData.setExperienceToNextLevel(((data[base + pos + 5] & 0xFF) << 8) | (data[base + pos + 6] & 0xFF));
+                                pos += 7;
+                            }
+                            if ((mask & GameProtocol.DELTA_SPRITE) != 0) {
+                                playerData.setSpriteNum(data[base + pos]);
+                                pos++;
+                            }
+                            if ((mask & GameProtocol.DELTA_DEAD) != 0) {
+                                playerData.setDead(data[base + pos] != 0);
+                                pos++;
+                            }
+                            parsedCount++;
+                        }
+                        while (players.size() > parsedCount) {
+                            players.remove(players.size() - 1);
+                        }
+                        if (pos >= length - 1) return false;
+                        int removedCount = data[base + pos] & 0xFF;
+                        pos++;
+                        if (pos + removedCount * 2 > length - 1) return false;
+                        for (int j = 0; j < removedCount; j++) {
+                            packet.addRemovedPlayerId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                            pos += 2;
+                        }
+                        if ((flags & GameProtocol.FLAG_INPUT_ACK) != 0 && pos + 1 < length - 1) {
+                            packet.setInputAck(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                        }
+                    }
+                    break;
+                case GameProtocol.TYPE_PLAYER_INPUT:
+                    if (length >= GameProtocol.PLAYER_INPUT_HEADER_SIZE) {
+                        packet.setInputSeq(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                        int runCount = data[base + pos + 2] & 0xFF;
+                        pos += 3;
+                        if (pos + runCount > length - 1) return false;
+                        for (int j = 0; j < runCount && packet.getInputCount() < GameProtocol.MAX_INPUTS_PER_PACKET; j++) {
+                            int run = ((data[base + pos] & 0xFF) >>> 4) + 1;
+                            byte mask = (byte) (data[base + pos] & GameProtocol.INPUT_MOVE_MASK);
+                            for (int k = 0; k < run; k++) {
+                                packet.addInputMask(mask);
+                            }
+                            pos++;
+                        }
+                    }
+                    break;
+                case GameProtocol.TYPE_SNAPSHOT_ACK:
+                    if (length >= GameProtocol.SNAPSHOT_ACK_SIZE) {
+                        packet.setSnapshotSeq(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
                     }
                     break;
                 case GameProtocol.TYPE_PLAYER_JOIN:
-                    if (rawPacket.length >= GameProtocol.PLAYER_JOIN_SIZE) {
-                        packet.setPlayerId(((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF));
-                        packet.setX(((rawPacket[pos + 2] & 0xFF) << 8) | (rawPacket[pos + 3] & 0xFF));
-                        packet.setY(((rawPacket[pos + 4] & 0xFF) << 8) | (rawPacket[pos + 5] & 0xFF));
-                        packet.setDirection(rawPacket[pos + 6]);
+                    if (length >= GameProtocol.PLAYER_JOIN_SIZE) {
+                        packet.setPlayerId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
+                        packet.setX(((data[base + pos + 2] & 0xFF) << 8) | (data[base + pos + 3] & 0xFF));
+                        packet.setY(((data[base + pos + 4] & 0xFF) << 8) | (data[base + pos + 5] & 0xFF));
+                        packet.setDirection(data[base + pos + 6]);
                         if ((flags & GameProtocol.FLAG_HEALTH_EXTENDED) != 0) {
-                            packet.setHealth(((rawPacket[pos + 7] & 0xFF) << 8) | (rawPacket[pos + 8] & 0xFF));
-                            packet.setMaxHealth(((rawPacket[pos + 9] & 0xFF) << 8) | (rawPacket[pos + 10] & 0xFF));
-                            packet.setDamage(((rawPacket[pos + 11] & 0xFF) << 8) | (rawPacket[pos + 12] & 0xFF));
-                            packet.setLevel(rawPacket[pos + 13] & 0xFF);
-                            packet.setExperience(((rawPacket[pos + 14] & 0xFF) << 8) | (rawPacket[pos + 15] & 0xFF));
-                            packet.setExperienceToNextLevel(((rawPacket[pos + 16] & 0xFF) << 8) | (rawPacket[pos + 17] & 0xFF));
+                            packet.setHealth(((data[base + pos + 7] & 0xFF) << 8) | (data[base + pos + 8] & 0xFF));
+                            packet.setMaxHealth(((data[base + pos + 9] & 0xFF) << 8) | (data[base + pos + 10] & 0xFF));
+                            packet.setDamage(((data[base + pos + 11] & 0xFF) << 8) | (data[base + pos + 12] & 0xFF));
+                            packet.setLevel(data[base + pos + 13] & 0xFF);
+                            packet.setExperience(((data[base + pos + 14] & 0xFF) << 8) | (data[base + pos + 15] & 0xFF));
+                            packet.setExperienceToNextLevel(((data[base + pos + 16] & 0xFF) << 8) | (data[base + pos + 17] & 0xFF));
                         }
                     }
                     break;
                 case GameProtocol.TYPE_PLAYER_LEAVE:
-                    if (rawPacket.length >= GameProtocol.PLAYER_LEAVE_SIZE) {
-                        packet.setPlayerId(((rawPacket[pos] & 0xFF) << 8) | (rawPacket[pos + 1] & 0xFF));
+                    if (length >= GameProtocol.PLAYER_LEAVE_SIZE) {
+                        packet.setPlayerId(((data[base + pos] & 0xFF) << 8) | (data[base + pos + 1] & 0xFF));
                     }
                     break;
                 default:
-                    return null;
+                    return false;
             }
-            return packet;
+            return true;
         } catch (ArrayIndexOutOfBoundsException e) {
-            return null;
+            return false;
         } catch (Exception e) {
-            return null;
+            return false;
+        }
+    }
+
+    private static int deltaEntrySize(byte mask) {
+        int size = 0;
+        if ((mask & GameProtocol.DELTA_POSITION) != 0) size += 4;
+        if ((mask & GameProtocol.DELTA_DIRECTION) != 0) size += 1;
+        if ((mask & GameProtocol.DELTA_HEALTH) != 0) size += 4;
+        if ((mask & GameProtocol.DELTA_LEVEL) != 0) size += 7;
+        if ((mask & GameProtocol.DELTA_SPRITE) != 0) size += 1;
+        if ((mask & GameProtocol.DELTA_DEAD) != 0) size += 1;
+        return size;
+    }
+
+    private static final String[] KNOWN_ITEM_TYPES = {"Sword", "Key", "Door", "Shield"};
+
+    private static String decodeItemType(byte[] data, int offset, int length) {
+        for (String known : KNOWN_ITEM_TYPES) {
+            if (known.length() == length && matchesAscii(known, data, offset)) {
+                return known;
+            }
+        }
+        return new String(data, offset, length, java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    private static boolean matchesAscii(String value, byte[] data, int offset) {
+        for (int i = 0; i < value.length(); i++) {
+            if (data[offset + i] != (byte) value.charAt(i)) {
+                return false;
+            }
         }
+        return true;
     }
 
     public void reset() {
@@ -1,45 +1,90 @@
 package ru.itis.java.app.network.protocol;
 
 import ru.itis.java.app.entity.PlayerStats;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class PacketEncoder {
-    private final ByteArrayOutputStream byteStream;
-    private final DataOutputStream dataStream;
+    private static final int MAX_ITEM_TYPE_LENGTH = 20;
+
+    private final int protocolVersion;
+    private final boolean escaping;
+    private final ByteBuffer scratch;
 
     public PacketEncoder() {
-        this.byteStream = new ByteArrayOutputStream();
-        this.dataStream = new DataOutputStream(byteStream);
+        this(GameProtocol.PROTOCOL_V1);
+    }
+
+    public PacketEncoder(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+        this.escaping = protocolVersion < GameProtocol.PROTOCOL_V2;
+        this.scratch = ByteBuffer.allocate(GameProtocol.MAX_FRAME_SIZE);
     }
 
     public byte[] encodeHandshake(int playerId, PlayerStats stats) throws IOException {
-        resetStream();
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_HANDSHAKE);
-        dataStream.writeByte(GameProtocol.FLAG_HEALTH_EXTENDED | GameProtocol.FLAG_LEVEL | GameProtocol.FLAG_MAX_HEALTH);
-        dataStream.writeShort(playerId);
-        dataStream.writeShort(stats.getHealth());
-        dataStream.writeShort(stats.getMaxHealth());
-        dataStream.writeShort(stats.getDamage());
-        dataStream.writeByte(stats.getLevel());
-        dataStream.writeShort(stats.getExperience());
-        dataStream.writeShort(stats.getExperienceToNextLevel());
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
+        scratch.clear();
+        return toBytes(encodeHandshake(scratch, playerId, stats));
+    }
+
+    public int encodeHandshake(ByteBuffer out, int playerId, PlayerStats stats) {
+        return encodeHandshake(out, playerId, stats, GameProtocol.PROTOCOL_VERSION);
+    }
+
+    public int encodeHandshake(ByteBuffer out, int playerId, PlayerStats stats, int version) {
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_HANDSHAKE);
+        putByte(out, GameProtocol.FLAG_HEALTH_EXTENDED | GameProtocol.FLAG_LEVEL | GameProtocol.FLAG_MAX_HEALTH
+                | GameProtocol.FLAG_PROTOCOL_VERSION);
+        putShort(out, playerId);
+        putShort(out, stats.getHealth());
+        putShort(out, stats.getMaxHealth());
+        putShort(out, stats.getDamage());
+        putByte(out, stats.getLevel());
+        putShort(out, stats.getExperience());
+        putShort(out, stats.getExperienceToNextLevel());
+        putByte(out, version);
+        return endFrame(out, start);
+    }
+
+    public byte[] encodeHandshakeRequest(int playerId, int version) {
+        scratch.clear();
+        return toBytes(encodeHandshakeRequest(scratch, playerId, version));
+    }
+
+    public int encodeHandshakeRequest(ByteBuffer out, int playerId, int version) {
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_HANDSHAKE);
+        putByte(out, GameProtocol.FLAG_PROTOCOL_VERSION);
+        putShort(out, playerId);
+        putByte(out, version);
+        return endFrame(out, start);
+    }
+
+    public byte[] encodeRoomRequest(int roomId) {
+        scratch.clear();
+        return toBytes(encodeRoomRequest(scratch, roomId));
+    }
+
+    public int encodeRoomRequest(ByteBuffer out, int roomId) {
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_HANDSHAKE);
+        putByte(out, GameProtocol.FLAG_ROOM);
+        putShort(out, roomId);
+        return endFrame(out, start);
     }
 
     public byte[] encodePlayerUpdate(int playerId, Integer x, Integer y, String direction, Byte spriteNum)
             throws IOException {
-        resetStream();
+        return encodePlayerUpdate(playerId, -1, x, y, direction, spriteNum);
+    }
+
+    public byte[] encodePlayerUpdate(int playerId, int inputSeq, Integer x, Integer y, String direction, Byte spriteNum)
+            throws IOException {
         byte flags = 0;
         if (x != null && y != null) {
             flags |= GameProtocol.FLAG_POSITION;
-            if (!GameProtocol.validateCoordinates(x, y)) {
+            if (inputSeq < 0 && !GameProtocol.validateCoordinates(x, y)) {
                 throw new IllegalArgumentException("Invalid coordinates: x=" + x + ", y=" + y);
             }
         }
@@ -49,314 +94,527 @@ public class PacketEncoder {
         if (spriteNum != null && spriteNum > 0) {
             flags |= GameProtocol.FLAG_SPRITE_NUM;
         }
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_PLAYER_UPDATE);
-        dataStream.writeByte(flags);
-        dataStream.writeShort(playerId);
+        if (inputSeq >= 0) {
+            flags |= GameProtocol.FLAG_INPUT_SEQ;
+        }
+        scratch.clear();
+        return toBytes(encodePlayerUpdate(scratch, flags, playerId,
+                x != null ? x : 0, y != null ? y : 0,
+                GameProtocol.directionToByte(direction), spriteNum != null ? spriteNum : 0, inputSeq));
+    }
+
+    public int encodePlayerUpdate(ByteBuffer out, byte flags, int playerId, int x, int y, byte direction, byte spriteNum) {
+        return encodePlayerUpdate(out, (byte) (flags & ~GameProtocol.FLAG_INPUT_SEQ), playerId, x, y, direction, spriteNum, -1);
+    }
+
+    public int encodePlayerUpdate(ByteBuffer out, byte flags, int playerId, int x, int y, byte direction, byte spriteNum,
+                                  int inputSeq) {
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_PLAYER_UPDATE);
+        putByte(out, flags);
+        putShort(out, playerId);
         if ((flags & GameProtocol.FLAG_POSITION) != 0) {
-            dataStream.writeShort(x);
-            dataStream.writeShort(y);
+            putShort(out, x);
+            putShort(out, y);
         }
         if ((flags & GameProtocol.FLAG_DIRECTION) != 0) {
-            dataStream.writeByte(GameProtocol.directionToByte(direction));
+            putByte(out, direction);
         }
         if ((flags & GameProtocol.FLAG_SPRITE_NUM) != 0) {
-            dataStream.writeByte(spriteNum);
+            putByte(out, spriteNum);
+        }
+        if ((flags & GameProtocol.FLAG_INPUT_SEQ) != 0) {
+            putShort(out, inputSeq);
         }
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
+        return endFrame(out, start);
     }
 
     public byte[] encodeAttack(int playerId, String direction, int x, int y)
             throws IOException {
-        resetStream();
+        scratch.clear();
+        return toBytes(encodeAttack(scratch, playerId, GameProtocol.directionToByte(direction), x, y));
+    }
+
+    public int encodeAttack(ByteBuffer out, int playerId, byte direction, int x, int y) {
         if (!GameProtocol.validateCoordinates(x, y)) {
             throw new IllegalArgumentException("Invalid attack coordinates: x=" + x + ", y=" + y);
         }
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_ATTACK);
-        dataStream.writeByte(0);
-        dataStream.writeShort(playerId);
-        dataStream.writeByte(GameProtocol.directionToByte(direction));
-        dataStream.writeShort(x);
-        dataStream.writeShort(y);
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_ATTACK);
+        putByte(out, 0);
+        putShort(out, playerId);
+        putByte(out, direction);
+        putShort(out, x);
+        putShort(out, y);
+        return endFrame(out, start);
     }
 
     public byte[] encodePlayerHit(int attackerId, int targetId, int pushX, int pushY)
             throws IOException {
-        resetStream();
+        scratch.clear();
+        return toBytes(encodePlayerHit(scratch, attackerId, targetId, pushX, pushY));
+    }
+
+    public int encodePlayerHit(ByteBuffer out, int attackerId, int targetId, int pushX, int pushY) {
         if (!GameProtocol.validateCoordinates(pushX, pushY)) {
             throw new IllegalArgumentException("Invalid push coordinates: x=" + pushX + ", y=" + pushY);
         }
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_PLAYER_HIT);
-        dataStream.writeByte(0);
-        dataStream.writeShort(attackerId);
-        dataStream.writeShort(targetId);
-        dataStream.writeShort(pushX);
-        dataStream.writeShort(pushY);
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_PLAYER_HIT);
+        putByte(out, 0);
+        putShort(out, attackerId);
+        putShort(out, targetId);
+        putShort(out, pushX);
+        putShort(out, pushY);
+        return endFrame(out, start);
     }
 
     public byte[] encodePlayerDamage(int attackerId, int targetId, int damage, int targetHealth, int targetMaxHealth, int targetLevel)
             throws IOException {
-        resetStream();
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_PLAYER_DAMAGE);
-        dataStream.writeByte(GameProtocol.FLAG_HEALTH_EXTENDED | GameProtocol.FLAG_MAX_HEALTH | GameProtocol.FLAG_LEVEL);
-        dataStream.writeShort(attackerId);
-        dataStream.writeShort(targetId);
-        dataStream.writeShort(damage);
-        dataStream.writeShort(targetHealth);
-        dataStream.writeShort(targetMaxHealth);
-        dataStream.writeByte(targetLevel);
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
+        scratch.clear();
+        return toBytes(encodePlayerDamage(scratch, attackerId, targetId, damage, targetHealth, targetMaxHealth, targetLevel));
+    }
+
+    public int encodePlayerDamage(ByteBuffer out, int attackerId, int targetId, int damage,
+                                  int targetHealth, int targetMaxHealth, int targetLevel) {
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_PLAYER_DAMAGE);
+        putByte(out, GameProtocol.FLAG_HEALTH_EXTENDED | GameProtocol.FLAG_MAX_HEALTH | GameProtocol.FLAG_LEVEL);
+        putShort(out, attackerId);
+        putShort(out, targetId);
+        putShort(out, damage);
+        putShort(out, targetHealth);
+        putShort(out, targetMaxHealth);
+        putByte(out, targetLevel);
+        return endFrame(out, start);
     }
 
     public byte[] encodePlayerDeath(int playerId, int killerId) throws IOException {
-        resetStream();
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_PLAYER_DEATH);
-        dataStream.writeByte(0);
-        dataStream.writeShort(playerId);
-        dataStream.writeShort(killerId);
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
-    }
-
-    public byte[] encodeWorldState(List<GamePacket.PlayerData> players) throws IOException {
-        resetStream();
+        scratch.clear();
+        return toBytes(encodePlayerDeath(scratch, playerId, killerId));
+    }
+
+    public int encodePlayerDeath(ByteBuffer out, int playerId, int killerId) {
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_PLAYER_DEATH);
+        putByte(out, 0);
+        putShort(out, playerId);
+        putShort(out, killerId);
+        return endFrame(out, start);
+    }
+
+    public int encodeWorldState(ByteBuffer out, int seq, SnapshotBuffer players) {
+        return encodeWorldState(out, seq, -1, players);
+    }
+
+    public int encodeWorldState(ByteBuffer out, int seq, int inputAck, SnapshotBuffer players) {
+        int start = beginFrame(out);
         int playerCount = Math.min(players.size(), GameProtocol.MAX_PLAYERS);
         byte flags = GameProtocol.FLAG_HEALTH_EXTENDED | GameProtocol.FLAG_LEVEL |
                 GameProtocol.FLAG_MAX_HEALTH | GameProtocol.FLAG_SPRITE_NUM;
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_WORLD_STATE);
-        dataStream.writeByte(flags);
-        dataStream.writeByte(playerCount);
-        for (int i = 0; i < playerCount; i++) {
-            GamePacket.PlayerData player = players.get(i);
-            if (!GameProtocol.validateCoordinates(player.getX(), player.getY())) {
-                throw new IllegalArgumentException("Invalid player coordinates for player " + player.getId());
+        if (seq >= 0) {
+            flags |= GameProtocol.FLAG_SNAPSHOT_SEQ;
+        }
+        if (inputAck >= 0) {
+            flags |= GameProtocol.FLAG_INPUT_ACK;
+        }
+        putByte(out, GameProtocol.TYPE_WORLD_STATE);
+        putByte(out, flags);
+        putByte(out, playerCount);
+        for (int row = 0; row < playerCount; row++) {
+            if (!GameProtocol.validateCoordinates(players.getX(row), players.getY(row))) {
+                throw new IllegalArgumentException("Invalid player coordinates for player " + players.getId(row));
             }
-            dataStream.writeShort(player.getId());
-            dataStream.writeShort(player.getX());
-            dataStream.writeShort(player.getY());
-            dataStream.writeByte(player.getDirection());
-            dataStream.writeShort(player.getHealth());
-            dataStream.writeShort(player.getMaxHealth());
-            dataStream.writeByte(player.getLevel());
-            dataStream.writeShort(player.getDamage());
-            dataStream.writeShort(player.getExperience());
-            dataStream.writeShort(player.getExperienceToNextLevel());
-            dataStream.writeByte(player.getSpriteNum());
-            dataStream.writeByte(player.isDead() ? 1 : 0);
-        }
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
+            putShort(out, players.getId(row));
+            putShort(out, players.getX(row));
+            putShort(out, players.getY(row));
+            putByte(out, players.getDirection(row));
+            putShort(out, players.getHealth(row));
+            putShort(out, players.getMaxHealth(row));
+            putByte(out, players.getLevel(row));
+            putShort(out, players.getDamage(row));
+            putShort(out, players.getExperience(row));
+            putShort(out, players.getExperienceToNextLevel(row));
+            putByte(out, players.getSpriteNum(row));
+            putByte(out, players.isDead(row) ? 1 : 0);
+        }
+        if (seq >= 0) {
+            putShort(out, seq);
+        }
+        if (inputAck >= 0) {
+            putShort(out, inputAck);
+        }
+        return endFrame(out, start);
+    }
+
+    public int encodeWorldDelta(ByteBuffer out, int seq, int baselineSeq, SnapshotBuffer players, SnapshotBuffer baseline) {
+        return encodeWorldDelta(out, seq, baselineSeq, -1, players, baseline);
+    }
+
+    public int encodeWorldDelta(ByteBuffer out, int seq, int baselineSeq, int inputAck,
+                                SnapshotBuffer players, SnapshotBuffer baseline) {
+        int playerCount = Math.min(players.size(), GameProtocol.MAX_PLAYERS);
+        int baselineCount = Math.min(baseline.size(), GameProtocol.MAX_PLAYERS);
+        int changedCount = 0;
+        int removedCount = 0;
+        int i = 0;
+        int j = 0;
+        while (i < playerCount || j < baselineCount) {
+            int order = compareIds(players, i, playerCount, baseline, j, baselineCount);
+            if (order < 0) {
+                changedCount++;
+                i++;
+            } else if (order > 0) {
+                removedCount++;
+                j++;
+            } else {
+                if (players.diffMask(i, baseline, j) != 0) {
+                    changedCount++;
+                }
+                i++;
+                j++;
+            }
+        }
+
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_WORLD_DELTA);
+        putByte(out, inputAck >= 0 ? GameProtocol.FLAG_INPUT_ACK : 0);
+        putShort(out, seq);
+        putShort(out, baselineSeq);
+        putByte(out, changedCount);
+        i = 0;
+        j = 0;
+        while (i < playerCount || j < baselineCount) {
+            int order = compareIds(players, i, playerCount, baseline, j, baselineCount);
+            if (order < 0) {
+                putPlayerDelta(out, players, i, GameProtocol.DELTA_ALL);
+                i++;
+            } else if (order > 0) {
+                j++;
+            } else {
+                byte mask = players.diffMask(i, baseline, j);
+                if (mask != 0) {
+                    putPlayerDelta(out, players, i, mask);
+                }
+                i++;
+                j++;
+            }
+        }
+        putByte(out, removedCount);
+        i = 0;
+        j = 0;
+        while (j < baselineCount) {
+            int order = compareIds(players, i, playerCount, baseline, j, baselineCount);
+            if (order < 0) {
+                i++;
+            } else if (order > 0) {
+                putShort(out, baseline.getId(j));
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+        }
+        if (inputAck >= 0) {
+            putShort(out, inputAck);
+        }
+        return endFrame(out, start);
+    }
+
+    private static int compareIds(SnapshotBuffer players, int i, int playerCount,
+                                  SnapshotBuffer baseline, int j, int baselineCount) {
+        if (j >= baselineCount) return -1;
+        if (i >= playerCount) return 1;
+        return Integer.compare(players.getId(i), baseline.getId(j));
+    }
+
+    private void putPlayerDelta(ByteBuffer out, SnapshotBuffer players, int row, byte mask) {
+        putShort(out, players.getId(row));
+        putByte(out, mask);
+        if ((mask & GameProtocol.DELTA_POSITION) != 0) {
+            putShort(out, players.getX(row));
+            putShort(out, players.getY(row));
+        }
+        if ((mask & GameProtocol.DELTA_DIRECTION) != 0) {
+            putByte(out, players.getDirection(row));
+        }
+        if ((mask & GameProtocol.DELTA_HEALTH) != 0) {
+            putShort(out, players.getHealth(row));
+            putShort(out, players.getMaxHealth(row));
+        }
+        if ((mask & GameProtocol.DELTA_LEVEL) != 0) {
+            putByte(out, players.getLevel(row));
+            putShort(out, players.getDamage(row));
+            putShort(out, players.getExperience(row));
+            putShort(out, players.getExperienceToNextLevel(row));
+        }
+        if ((mask & GameProtocol.DELTA_SPRITE) != 0) {
+            putByte(out, players.getSpriteNum(row));
+        }
+        if ((mask & GameProtocol.DELTA_DEAD) != 0) {
+            putByte(out, players.isDead(row) ? 1 : 0);
+        }
+    }
+
+    public byte[] encodeSnapshotAck(int seq) {
+        scratch.clear();
+        return toBytes(encodeSnapshotAck(scratch, seq));
+    }
+
+    public int encodeSnapshotAck(ByteBuffer out, int seq) {
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_SNAPSHOT_ACK);
+        putByte(out, 0);
+        putShort(out, seq);
+        return endFrame(out, start);
+    }
+
+    public byte[] encodePlayerInput(int firstSeq, byte[] masks, int count) {
+        scratch.clear();
+        return toBytes(encodePlayerInput(scratch, firstSeq, masks, count));
+    }
+
+    // Held keys repeat frame after frame, so inputs travel as runs: high nibble is the run length - 1,
+    // low nibble is the key mask.
+    public int encodePlayerInput(ByteBuffer out, int firstSeq, byte[] masks, int count) {
+        count = Math.min(count, GameProtocol.MAX_INPUTS_PER_PACKET);
+        int runCount = 0;
+        for (int i = 0; i < count; i += inputRunLength(masks, i, count)) {
+            runCount++;
+        }
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_PLAYER_INPUT);
+        putByte(out, 0);
+        putShort(out, firstSeq);
+        putByte(out, runCount);
+        for (int i = 0; i < count; ) {
+            int run = inputRunLength(masks, i, count);
+            putByte(out, ((run - 1) << 4) | (masks[i] & GameProtocol.INPUT_MOVE_MASK));
+            i += run;
+        }
+        return endFrame(out, start);
+    }
+
+    private static int inputRunLength(byte[] masks, int from, int count) {
+        int mask = masks[from] & GameProtocol.INPUT_MOVE_MASK;
+        int end = from + 1;
+        while (end < count && end - from < GameProtocol.MAX_INPUT_RUN
+                && (masks[end] & GameProtocol.INPUT_MOVE_MASK) == mask) {
+            end++;
+        }
+        return end - from;
     }
 
     public byte[] encodePlayerJoin(int playerId, int x, int y, String direction, PlayerStats stats)
             throws IOException {
-        resetStream();
+        scratch.clear();
+        return toBytes(encodePlayerJoin(scratch, playerId, x, y, GameProtocol.directionToByte(direction), stats));
+    }
+
+    public int encodePlayerJoin(ByteBuffer out, int playerId, int x, int y, byte direction, PlayerStats stats) {
         if (!GameProtocol.validateCoordinates(x, y)) {
             throw new IllegalArgumentException("Invalid join coordinates: x=" + x + ", y=" + y);
         }
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_PLAYER_JOIN);
-        dataStream.writeByte(GameProtocol.FLAG_HEALTH_EXTENDED | GameProtocol.FLAG_LEVEL | GameProtocol.FLAG_MAX_HEALTH);
-        dataStream.writeShort(playerId);
-        dataStream.writeShort(x);
-        dataStream.writeShort(y);
-        dataStream.writeByte(GameProtocol.directionToByte(direction));
-        dataStream.writeShort(stats.getHealth());
-        dataStream.writeShort(stats.getMaxHealth());
-        dataStream.writeShort(stats.getDamage());
-        dataStream.writeByte(stats.getLevel());
-        dataStream.writeShort(stats.getExperience());
-        dataStream.writeShort(stats.getExperienceToNextLevel());
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_PLAYER_JOIN);
+        putByte(out, GameProtocol.FLAG_HEALTH_EXTENDED | GameProtocol.FLAG_LEVEL | GameProtocol.FLAG_MAX_HEALTH);
+        putShort(out, playerId);
+        putShort(out, x);
+        putShort(out, y);
+        putByte(out, direction);
+        putShort(out, stats.getHealth());
+        putShort(out, stats.getMaxHealth());
+        putShort(out, stats.getDamage());
+        putByte(out, stats.getLevel());
+        putShort(out, stats.getExperience());
+        putShort(out, stats.getExperienceToNextLevel());
+        return endFrame(out, start);
     }
 
     public byte[] encodePlayerLeave(int playerId) throws IOException {
-        resetStream();
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_PLAYER_LEAVE);
-        dataStream.writeByte(0);
-        dataStream.writeShort(playerId);
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
+        scratch.clear();
+        return toBytes(encodePlayerLeave(scratch, playerId));
+    }
+
+    public int encodePlayerLeave(ByteBuffer out, int playerId) {
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_PLAYER_LEAVE);
+        putByte(out, 0);
+        putShort(out, playerId);
+        return endFrame(out, start);
     }
 
     public byte[] fastEncodePlayerUpdate(int playerId, int x, int y, byte direction, byte spriteNum) {
         if (!GameProtocol.validateCoordinates(x, y)) {
             return null;
         }
-        resetStream();
-        try {
-            byte flags = GameProtocol.FLAG_POSITION | GameProtocol.FLAG_DIRECTION | GameProtocol.FLAG_SPRITE_NUM;
-            dataStream.writeByte(GameProtocol.PACKET_START);
-            dataStream.writeByte(GameProtocol.TYPE_PLAYER_UPDATE);
-            dataStream.writeByte(flags);
-            dataStream.writeShort(playerId);
-            dataStream.writeShort(x);
-            dataStream.writeShort(y);
-            dataStream.writeByte(direction);
-            dataStream.writeByte(spriteNum);
-            dataStream.writeByte(GameProtocol.PACKET_END);
-        } catch (IOException e) {
-            return null;
-        }
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
+        byte flags = GameProtocol.FLAG_POSITION | GameProtocol.FLAG_DIRECTION | GameProtocol.FLAG_SPRITE_NUM;
+        scratch.clear();
+        return toBytes(encodePlayerUpdate(scratch, flags, playerId, x, y, direction, spriteNum));
     }
 
     public byte[] encodeItemPickup(int playerId, int itemId, String itemType, int itemX, int itemY, int experienceGained)
             throws IOException {
-        resetStream();
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_ITEM_PICKUP);
-        dataStream.writeByte(GameProtocol.FLAG_ITEM_PICKUP);
-        dataStream.writeShort(playerId);
-        dataStream.writeShort(itemId);
-        byte[] itemTypeBytes = itemType.getBytes("UTF-8");
-        dataStream.writeByte(Math.min(itemTypeBytes.length, 20));
-        dataStream.write(itemTypeBytes, 0, Math.min(itemTypeBytes.length, 20));
-        dataStream.writeShort(itemX);
-        dataStream.writeShort(itemY);
-        dataStream.writeShort(experienceGained);
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
+        scratch.clear();
+        return toBytes(encodeItemPickup(scratch, playerId, itemId, itemType, itemX, itemY, experienceGained));
+    }
+
+    public int encodeItemPickup(ByteBuffer out, int playerId, int itemId, String itemType,
+                                int itemX, int itemY, int experienceGained) {
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_ITEM_PICKUP);
+        putByte(out, GameProtocol.FLAG_ITEM_PICKUP);
+        putShort(out, playerId);
+        putShort(out, itemId);
+        putItemType(out, itemType);
+        putShort(out, itemX);
+        putShort(out, itemY);
+        putShort(out, experienceGained);
+        return endFrame(out, start);
     }
 
     public byte[] encodeItemRemove(int itemId) throws IOException {
-        resetStream();
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_ITEM_REMOVE);
-        dataStream.writeByte(0);
-        dataStream.writeShort(itemId);
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
+        scratch.clear();
+        return toBytes(encodeItemRemove(scratch, itemId));
+    }
+
+    public int encodeItemRemove(ByteBuffer out, int itemId) {
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_ITEM_REMOVE);
+        putByte(out, 0);
+        putShort(out, itemId);
+        return endFrame(out, start);
     }
 
     public byte[] encodePlayerExperience(int playerId, int experience, int totalExperience, int level)
             throws IOException {
-        resetStream();
-        dataStream.writeByte(GameProtocol.PACKET_START);
-        dataStream.writeByte(GameProtocol.TYPE_PLAYER_EXPERIENCE);
-        dataStream.writeByte(GameProtocol.FLAG_EXPERIENCE_UPDATE | GameProtocol.FLAG_LEVEL);
-        dataStream.writeShort(playerId);
-        dataStream.writeShort(experience);
-        dataStream.writeShort(totalExperience);
-        dataStream.writeByte(level);
-        dataStream.writeByte(GameProtocol.PACKET_END);
-        byte[] rawPacket = byteStream.toByteArray();
-        byte[] escapedData = escapePacketData(rawPacket);
-        return escapedData;
-    }
-
-    private byte[] escapePacketData(byte[] rawPacket) {
-        if (rawPacket.length < 2) {
-            return rawPacket;
-        }
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        output.write(rawPacket[0]);
-        for (int i = 1; i < rawPacket.length - 1; i++) {
-            byte b = rawPacket[i];
-            if (b == GameProtocol.PACKET_START) {
-                output.write(GameProtocol.ESCAPE_CHAR);
-                output.write(GameProtocol.ESCAPED_START);
-            } else if (b == GameProtocol.PACKET_END) {
-                output.write(GameProtocol.ESCAPE_CHAR);
-                output.write(GameProtocol.ESCAPED_END);
-            } else if (b == GameProtocol.ESCAPE_CHAR) {
-                output.write(GameProtocol.ESCAPE_CHAR);
-                output.write(GameProtocol.ESCAPED_ESCAPE);
-            } else {
-                output.write(b);
-            }
-        }
-        output.write(rawPacket[rawPacket.length - 1]);
-        return output.toByteArray();
+        scratch.clear();
+        return toBytes(encodePlayerExperience(scratch, playerId, experience, totalExperience, level));
     }
 
-    private void resetStream() {
-        byteStream.reset();
+    public int encodePlayerExperience(ByteBuffer out, int playerId, int experience, int totalExperience, int level) {
+        int start = beginFrame(out);
+        putByte(out, GameProtocol.TYPE_PLAYER_EXPERIENCE);
+        putByte(out, GameProtocol.FLAG_EXPERIENCE_UPDATE | GameProtocol.FLAG_LEVEL);
+        putShort(out, playerId);
+        putShort(out, experience);
+        putShort(out, totalExperience);
+        putByte(out, level);
+        return endFrame(out, start);
     }
 
-    public void close() {
-        try {
-            dataStream.close();
-            byteStream.close();
-        } catch (IOException e) {
+    // frames[0..count) must already be complete v2 frames; their bytes are copied without re-encoding.
+    public int encodeBundle(ByteBuffer out, ByteBuffer[] frames, int count) {
+        if (escaping) {
+            throw new IllegalStateException("Bundles require protocol v" + GameProtocol.PROTOCOL_V2);
         }
+        int innerLength = 0;
+        for (int i = 0; i < count; i++) {
+            innerLength += frames[i].remaining();
+        }
+        int start = out.position();
+        int value = innerLength + 1;
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+        out.put(GameProtocol.TYPE_BUNDLE);
+        for (int i = 0; i < count; i++) {
+            out.put(frames[i].duplicate());
+        }
+        return out.position() - start;
     }
 
-    private static class ByteArrayOutputStream extends OutputStream {
-        private byte[] buffer;
-        private int size;
+    private int beginFrame(ByteBuffer out) {
+        int start = out.position();
+        out.put(escaping ? GameProtocol.PACKET_START : 0);
+        return start;
+    }
 
-        public ByteArrayOutputStream() {
-            this(32);
+    private int endFrame(ByteBuffer out, int start) {
+        if (escaping) {
+            out.put(GameProtocol.PACKET_END);
+            return out.position() - start;
         }
-
-        public ByteArrayOutputStream(int initialCapacity) {
-            buffer = new byte[initialCapacity];
-            size = 0;
+        int end = out.position();
+        int payloadLength = end - start - 1;
+        int prefix = GameProtocol.varIntSize(payloadLength);
+        if (prefix > 1) {
+            for (int i = end - 1; i > start; i--) {
+                out.put(i + prefix - 1, out.get(i));
+            }
+            end += prefix - 1;
+            out.position(end);
         }
-
-        public void write(int b) {
-            ensureCapacity(size + 1);
-            buffer[size++] = (byte) b;
+        int pos = start;
+        int value = payloadLength;
+        while ((value & ~0x7F) != 0) {
+            out.put(pos++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
         }
+        out.put(pos, (byte) value);
+        return end - start;
+    }
 
-        public void write(byte b) {
-            ensureCapacity(size + 1);
-            buffer[size++] = b;
+    private void putByte(ByteBuffer out, int value) {
+        byte b = (byte) value;
+        if (!escaping) {
+            out.put(b);
+        } else if (b == GameProtocol.PACKET_START) {
+            out.put(GameProtocol.ESCAPE_CHAR);
+            out.put(GameProtocol.ESCAPED_START);
+        } else if (b == GameProtocol.PACKET_END) {
+            out.put(GameProtocol.ESCAPE_CHAR);
+            out.put(GameProtocol.ESCAPED_END);
+        } else if (b == GameProtocol.ESCAPE_CHAR) {
+            out.put(GameProtocol.ESCAPE_CHAR);
+            out.put(GameProtocol.ESCAPED_ESCAPE);
+        } else {
+            out.put(b);
         }
+    }
+
+    private void putShort(ByteBuffer out, int value) {
+        putByte(out, value >>> 8);
+        putByte(out, value);
+    }
 
-        private void ensureCapacity(int minCapacity) {
-            if (minCapacity > buffer.length) {
-                int newCapacity = Math.max(buffer.length * 2, minCapacity);
-                byte[] newBuffer = new byte[newCapacity];
-                System.arraycopy(buffer, 0, newBuffer, 0, size);
-                buffer = newBuffer;
+    private void putItemType(ByteBuffer out, String itemType) {
+        int length = Math.min(itemType.length(), MAX_ITEM_TYPE_LENGTH);
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            if (itemType.charAt(i) >= 0x80) {
+                ascii = false;
+                break;
             }
         }
-
-        public byte[] toByteArray() {
-            byte[] result = new byte[size];
-            System.arraycopy(buffer, 0, result, 0, size);
-            return result;
+        if (ascii) {
+            putByte(out, length);
+            for (int i = 0; i < length; i++) {
+                putByte(out, itemType.charAt(i));
+            }
+            return;
         }
-
-        public void reset() {
-            size = 0;
+        byte[] itemTypeBytes = itemType.getBytes(StandardCharsets.UTF_8);
+        int byteLength = Math.min(itemTypeBytes.length, MAX_ITEM_TYPE_LENGTH);
+        putByte(out, byteLength);
+        for (int i = 0; i < byteLength; i++) {
+            putByte(out, itemTypeBytes[i]);
         }
     }
-}
\ No newline at end of file
+
+    private byte[] toBytes(int length) {
+        byte[] result = new byte[length];
+        scratch.flip();
+        scratch.get(result);
+        return result;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public void close() {
+    }
+}
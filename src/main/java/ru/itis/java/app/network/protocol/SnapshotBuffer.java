@@ -0,0 +1,196 @@
+package ru.itis.java.app.network.protocol;
+
+import java.util.Arrays;
+
+public class SnapshotBuffer {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int size = 0;
+    private int[] ids;
+    private int[] xs;
+    private int[] ys;
+    private byte[] directions;
+    private int[] health;
+    private int[] maxHealth;
+    private byte[] levels;
+    private int[] damage;
+    private int[] experience;
+    private int[] experienceToNextLevel;
+    private byte[] spriteNums;
+    private boolean[] dead;
+    private long[] sortKeys;
+    private SnapshotBuffer sortScratch;
+
+    public SnapshotBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SnapshotBuffer(int capacity) {
+        allocate(Math.max(1, capacity));
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        directions = new byte[capacity];
+        health = new int[capacity];
+        maxHealth = new int[capacity];
+        levels = new byte[capacity];
+        damage = new int[capacity];
+        experience = new int[capacity];
+        experienceToNextLevel = new int[capacity];
+        spriteNums = new byte[capacity];
+        dead = new boolean[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        xs = Arrays.copyOf(xs, newCapacity);
+        ys = Arrays.copyOf(ys, newCapacity);
+        directions = Arrays.copyOf(directions, newCapacity);
+        health = Arrays.copyOf(health, newCapacity);
+        maxHealth = Arrays.copyOf(maxHealth, newCapacity);
+        levels = Arrays.copyOf(levels, newCapacity);
+        damage = Arrays.copyOf(damage, newCapacity);
+        experience = Arrays.copyOf(experience, newCapacity);
+        experienceToNextLevel = Arrays.copyOf(experienceToNextLevel, newCapacity);
+        spriteNums = Arrays.copyOf(spriteNums, newCapacity);
+        dead = Arrays.copyOf(dead, newCapacity);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int add(int id, int x, int y, byte direction, int health, int maxHealth, int level,
+                   int damage, int experience, int experienceToNextLevel, byte spriteNum, boolean dead) {
+        ensureCapacity(size + 1);
+        int row = size++;
+        ids[row] = id;
+        xs[row] = x;
+        ys[row] = y;
+        directions[row] = direction;
+        this.health[row] = health;
+        this.maxHealth[row] = maxHealth;
+        levels[row] = (byte) level;
+        this.damage[row] = damage;
+        this.experience[row] = experience;
+        this.experienceToNextLevel[row] = experienceToNextLevel;
+        spriteNums[row] = spriteNum;
+        this.dead[row] = dead;
+        return row;
+    }
+
+    public int addRow(SnapshotBuffer source, int row) {
+        return add(source.ids[row], source.xs[row], source.ys[row], source.directions[row],
+                source.health[row], source.maxHealth[row], source.levels[row] & 0xFF, source.damage[row],
+                source.experience[row], source.experienceToNextLevel[row], source.spriteNums[row], source.dead[row]);
+    }
+
+    public void copyFrom(SnapshotBuffer source) {
+        clear();
+        ensureCapacity(source.size);
+        for (int row = 0; row < source.size; row++) {
+            addRow(source, row);
+        }
+    }
+
+    public void sortById() {
+        if (isSorted()) {
+            return;
+        }
+        if (sortKeys == null || sortKeys.length < size) {
+            sortKeys = new long[ids.length];
+        }
+        for (int row = 0; row < size; row++) {
+            sortKeys[row] = ((long) ids[row] << 32) | row;
+        }
+        Arrays.sort(sortKeys, 0, size);
+        if (sortScratch == null) {
+            sortScratch = new SnapshotBuffer(ids.length);
+        }
+        sortScratch.clear();
+        for (int i = 0; i < size; i++) {
+            sortScratch.addRow(this, (int) sortKeys[i]);
+        }
+        swapColumns(sortScratch);
+    }
+
+    private boolean isSorted() {
+        for (int row = 1; row < size; row++) {
+            if (ids[row - 1] > ids[row]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void swapColumns(SnapshotBuffer other) {
+        int[] intColumn;
+        byte[] byteColumn;
+        boolean[] boolColumn;
+        intColumn = ids; ids = other.ids; other.ids = intColumn;
+        intColumn = xs; xs = other.xs; other.xs = intColumn;
+        intColumn = ys; ys = other.ys; other.ys = intColumn;
+        byteColumn = directions; directions = other.directions; other.directions = byteColumn;
+        intColumn = health; health = other.health; other.health = intColumn;
+        intColumn = maxHealth; maxHealth = other.maxHealth; other.maxHealth = intColumn;
+        byteColumn = levels; levels = other.levels; other.levels = byteColumn;
+        intColumn = damage; damage = other.damage; other.damage = intColumn;
+        intColumn = experience; experience = other.experience; other.experience = intColumn;
+        intColumn = experienceToNextLevel; experienceToNextLevel = other.experienceToNextLevel; other.experienceToNextLevel = intColumn;
+        byteColumn = spriteNums; spriteNums = other.spriteNums; other.spriteNums = byteColumn;
+        boolColumn = dead; dead = other.dead; other.dead = boolColumn;
+        int otherSize = other.size;
+        other.size = size;
+        size = otherSize;
+    }
+
+    public int indexOf(int id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ids[mid] < id) {
+                low = mid + 1;
+            } else if (ids[mid] > id) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public byte diffMask(int row, SnapshotBuffer baseline, int baselineRow) {
+        byte mask = 0;
+        if (xs[row] != baseline.xs[baselineRow] || ys[row] != baseline.ys[baselineRow]) mask |= GameProtocol.DELTA_POSITION;
+        if (directions[row] != baseline.directions[baselineRow]) mask |= GameProtocol.DELTA_DIRECTION;
+        if (health[row] != baseline.health[baselineRow] || maxHealth[row] != baseline.maxHealth[baselineRow]) mask |= GameProtocol.DELTA_HEALTH;
+        if (levels[row] != baseline.levels[baselineRow] || damage[row] != baseline.damage[baselineRow]
+                || experience[row] != baseline.experience[baselineRow]
+                || experienceToNextLevel[row] != baseline.experienceToNextLevel[baselineRow]) mask |= GameProtocol.DELTA_LEVEL;
+        if (spriteNums[row] != baseline.spriteNums[baselineRow]) mask |= GameProtocol.DELTA_SPRITE;
+        if (dead[row] != baseline.dead[baselineRow]) mask |= GameProtocol.DELTA_DEAD;
+        return mask;
+    }
+
+    public int size() { return size; }
+    public int getId(int row) { return ids[row]; }
+    public int getX(int row) { return xs[row]; }
+    public int getY(int row) { return ys[row]; }
+    public byte getDirection(int row) { return directions[row]; }
+    public int getHealth(int row) { return health[row]; }
+    public int getMaxHealth(int row) { return maxHealth[row]; }
+    public int getLevel(int row) { return levels[row] & 0xFF; }
+    public int getDamage(int row) { return damage[row]; }
+    public int getExperience(int row) { return experience[row]; }
+    public int getExperienceToNextLevel(int row) { return experienceToNextLevel[row]; }
+    public byte getSpriteNum(int row) { return spriteNums[row]; }
+    public boolean isDead(int row) { return dead[row]; }
+}
@@ -0,0 +1,141 @@
+package ru.itis.java.app.network.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SnapshotHistory {
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final int[] sequences;
+    private final List<List<GamePacket.PlayerData>> snapshots;
+
+    public SnapshotHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SnapshotHistory(int capacity) {
+        this.sequences = new int[capacity];
+        this.snapshots = new ArrayList<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences[i] = -1;
+            snapshots.add(null);
+        }
+    }
+
+    public synchronized void put(int seq, List<GamePacket.PlayerData> players) {
+        int index = seq % sequences.length;
+        sequences[index] = seq;
+        snapshots.set(index, players);
+    }
+
+    public synchronized List<GamePacket.PlayerData> get(int seq) {
+        if (seq < 0) {
+            return null;
+        }
+        int index = seq % sequences.length;
+        return sequences[index] == seq ? snapshots.get(index) : null;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = -1;
+            snapshots.set(i, null);
+        }
+    }
+
+    public List<GamePacket.PlayerData> applyDelta(GamePacket delta) {
+        List<GamePacket.PlayerData> baseline = get(delta.getBaselineSeq());
+        if (baseline == null) {
+            return null;
+        }
+        List<GamePacket.PlayerData> changes = delta.getPlayersData();
+        List<GamePacket.PlayerData> result = new ArrayList<>(baseline.size() + changes.size());
+        int next = 0;
+        for (GamePacket.PlayerData previous : baseline) {
+            while (next < changes.size() && changes.get(next).getId() < previous.getId()) {
+                result.add(copyOf(changes.get(next++)));
+            }
+            GamePacket.PlayerData change = null;
+            if (next < changes.size() && changes.get(next).getId() == previous.getId()) {
+                change = changes.get(next++);
+            }
+            if (isRemoved(delta, previous.getId())) {
+                continue;
+            }
+            GamePacket.PlayerData player = copyOf(previous);
+            if (change != null) {
+                applyChange(player, change);
+            }
+            result.add(player);
+        }
+        while (next < changes.size()) {
+            result.add(copyOf(changes.get(next++)));
+        }
+        return result;
+    }
+
+    public static List<GamePacket.PlayerData> copyOf(List<GamePacket.PlayerData> players) {
+        List<GamePacket.PlayerData> copy = new ArrayList<>(players.size());
+        for (GamePacket.PlayerData player : players) {
+            copy.add(copyOf(player));
+        }
+        return copy;
+    }
+
+    public static void copyInto(List<GamePacket.PlayerData> source, List<GamePacket.PlayerData> target) {
+        for (int i = 0; i < source.size(); i++) {
+            if (i < target.size()) {
+                target.get(i).copyFrom(source.get(i));
+            } else {
+                GamePacket.PlayerData data = new GamePacket.PlayerData();
+                data.copyFrom(source.get(i));
+                target.add(data);
+            }
+        }
+        while (target.size() > source.size()) {
+            target.remove(target.size() - 1);
+        }
+    }
+
+    private static void applyChange(GamePacket.PlayerData player, GamePacket.PlayerData change) {
+        byte mask = change.getChangeMask();
+        if ((mask & GameProtocol.DELTA_POSITION) != 0) {
+            player.setX(change.getX());
+            player.setY(change.getY());
+        }
+        if ((mask & GameProtocol.DELTA_DIRECTION) != 0) {
+            player.setDirection(change.getDirection());
+        }
+        if ((mask & GameProtocol.DELTA_HEALTH) != 0) {
+            player.setHealth(change.getHealth());
+            player.setMaxHealth(change.getMaxHealth());
+        }
+        if ((mask & GameProtocol.DELTA_LEVEL) != 0) {
+            player.setLevel(change.getLevel());
+            player.setDamage(change.getDamage());
+            player.setExperience(change.getExperience());
+            player.setExperienceToNextLevel(change.getExperienceToNextLevel());
+        }
+        if ((mask & GameProtocol.DELTA_SPRITE) != 0) {
+            player.setSpriteNum(change.getSpriteNum());
+        }
+        if ((mask & GameProtocol.DELTA_DEAD) != 0) {
+            player.setDead(change.isDead());
+        }
+    }
+
+    private static GamePacket.PlayerData copyOf(GamePacket.PlayerData player) {
+        GamePacket.PlayerData copy = new GamePacket.PlayerData();
+        copy.copyFrom(player);
+        return copy;
+    }
+
+    private static boolean isRemoved(GamePacket delta, int id) {
+        for (int i = 0; i < delta.getRemovedCount(); i++) {
+            if (delta.getRemovedPlayerId(i) == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,270 @@
+package ru.itis.java.app.network.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+public class StreamingPacketDecoder {
+    private static final int INITIAL_CAPACITY = 8192;
+    private static final int MAX_CAPACITY = 64 * 1024;
+
+    public interface PacketHandler {
+        void onPacket(GamePacket packet) throws IOException;
+    }
+
+    private byte[] buffer;
+    private ByteBuffer channelView;
+    private int start = 0;
+    private int end = 0;
+    private int scanOffset = 0;
+    private volatile int protocolVersion = GameProtocol.PROTOCOL_V1;
+    private final boolean reusePackets;
+    private final GamePacket reusablePacket = new GamePacket();
+
+    public StreamingPacketDecoder() {
+        this(true);
+    }
+
+    public StreamingPacketDecoder(boolean reusePackets) {
+        this.reusePackets = reusePackets;
+        this.buffer = new byte[INITIAL_CAPACITY];
+        this.channelView = ByteBuffer.wrap(buffer);
+    }
+
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        ensureWritable();
+        channelView.limit(buffer.length);
+        channelView.position(end);
+        int bytesRead = channel.read(channelView);
+        if (bytesRead > 0) {
+            end += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    public int readFrom(InputStream in) throws IOException {
+        ensureWritable();
+        int bytesRead = in.read(buffer, end, buffer.length - end);
+        if (bytesRead > 0) {
+            end += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    public void feed(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensureWritable();
+            int chunk = Math.min(length, buffer.length - end);
+            System.arraycopy(data, offset, buffer, end, chunk);
+            end += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    public int decode(PacketHandler handler) throws IOException {
+        int decoded = 0;
+        while (start < end) {
+            if (protocolVersion >= GameProtocol.PROTOCOL_V2) {
+                int result = decodeLengthPrefixed(handler);
+                if (result < 0) {
+                    break;
+                }
+                decoded += result;
+                continue;
+            }
+            int packetStart = indexOf(GameProtocol.PACKET_START, start, end);
+            if (packetStart == -1) {
+                start = end;
+                break;
+            }
+            start = packetStart;
+            int packetEnd = findPacketEnd(Math.max(start + 1, scanOffset), end);
+            if (packetEnd == -1) {
+                scanOffset = end;
+                break;
+            }
+            if (packetEnd < 0) {
+                start = -packetEnd - 2;
+                scanOffset = 0;
+                continue;
+            }
+            int length = unescapeInPlace(start, packetEnd + 1);
+            scanOffset = 0;
+            int packetOffset = start;
+            start = packetEnd + 1;
+            if (GameProtocol.isValidPacket(buffer, packetOffset, length)) {
+                GamePacket packet = reusePackets ? reusablePacket : new GamePacket();
+                if (PacketDecoder.parsePacket(buffer, packetOffset, length, packet)) {
+                    decoded++;
+                    handler.onPacket(packet);
+                }
+            }
+        }
+        if (start == end) {
+            start = 0;
+            end = 0;
+            scanOffset = 0;
+        }
+        return decoded;
+    }
+
+    private int decodeLengthPrefixed(PacketHandler handler) throws IOException {
+        int length = 0;
+        int shift = 0;
+        int pos = start;
+        while (true) {
+            if (pos == end) {
+                return -1;
+            }
+            byte b = buffer[pos++];
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+            if (shift > 14) {
+                throw new IOException("Invalid frame length prefix");
+            }
+        }
+        if (length < 2 || length > MAX_CAPACITY - 3) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        if (end - pos < length) {
+            return -1;
+        }
+        start = pos + length;
+        if (buffer[pos] == GameProtocol.TYPE_BUNDLE) {
+            return decodeBundle(pos + 1, pos + length, handler);
+        }
+        return decodeFrame(pos, length, handler);
+    }
+
+    private int decodeBundle(int pos, int bundleEnd, PacketHandler handler) throws IOException {
+        int decoded = 0;
+        while (pos < bundleEnd) {
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (pos == bundleEnd || shift > 14) {
+                    throw new IOException("Invalid bundled frame length prefix");
+                }
+                b = buffer[pos++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (length < 2 || length > bundleEnd - pos) {
+                throw new IOException("Invalid bundled frame length: " + length);
+            }
+            if (buffer[pos] != GameProtocol.TYPE_BUNDLE) {
+                decoded += decodeFrame(pos, length, handler);
+            }
+            pos += length;
+        }
+        return decoded;
+    }
+
+    private int decodeFrame(int pos, int length, PacketHandler handler) throws IOException {
+        byte type = buffer[pos];
+        if (!GameProtocol.isValidType(type)) {
+            return 0;
+        }
+        GamePacket packet = reusePackets ? reusablePacket : new GamePacket();
+        // parsePacket expects a v1 layout; offset by one so the type lands at base + 1
+        if (PacketDecoder.parsePacket(buffer, pos - 1, length + 2, packet)) {
+            handler.onPacket(packet);
+            return 1;
+        }
+        return 0;
+    }
+
+    private int indexOf(byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int findPacketEnd(int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buffer[i];
+            if (b == GameProtocol.PACKET_END) {
+                return i;
+            }
+            if (b == GameProtocol.PACKET_START) {
+                return -i - 2;
+            }
+        }
+        return -1;
+    }
+
+    private int unescapeInPlace(int from, int to) {
+        int write = from;
+        boolean escaping = false;
+        for (int read = from; read < to; read++) {
+            byte b = buffer[read];
+            if (escaping) {
+                if (b == GameProtocol.ESCAPED_START) {
+                    buffer[write++] = GameProtocol.PACKET_START;
+                } else if (b == GameProtocol.ESCAPED_END) {
+                    buffer[write++] = GameProtocol.PACKET_END;
+                } else if (b == GameProtocol.ESCAPED_ESCAPE) {
+                    buffer[write++] = GameProtocol.ESCAPE_CHAR;
+                } else {
+                    buffer[write++] = GameProtocol.ESCAPE_CHAR;
+                    buffer[write++] = b;
+                }
+                escaping = false;
+            } else if (b == GameProtocol.ESCAPE_CHAR) {
+                escaping = true;
+            } else {
+                buffer[write++] = b;
+            }
+        }
+        return write - from;
+    }
+
+    private void ensureWritable() throws IOException {
+        if (end < buffer.length) {
+            return;
+        }
+        if (start > 0) {
+            int remaining = end - start;
+            System.arraycopy(buffer, start, buffer, 0, remaining);
+            scanOffset = scanOffset > start ? scanOffset - start : 0;
+            start = 0;
+            end = remaining;
+            return;
+        }
+        if (buffer.length >= MAX_CAPACITY) {
+            throw new IOException("Frame exceeds " + MAX_CAPACITY + " bytes");
+        }
+        byte[] grown = new byte[Math.min(buffer.length * 2, MAX_CAPACITY)];
+        System.arraycopy(buffer, 0, grown, 0, end);
+        buffer = grown;
+        channelView = ByteBuffer.wrap(buffer);
+    }
+
+    public void setProtocolVersion(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+        scanOffset = 0;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public int getBufferedBytes() {
+        return end - start;
+    }
+
+    public void reset() {
+        start = 0;
+        end = 0;
+        scanOffset = 0;
+    }
+}
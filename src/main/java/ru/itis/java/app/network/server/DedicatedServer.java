@@ -0,0 +1,49 @@
+package ru.itis.java.app.network.server;
+
+import java.io.IOException;
+
+public class DedicatedServer {
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Использование: java -jar pleasure-island-server.jar [параметры]",
+            "  --port=1234            порт сервера",
+            "  --tick-rate=30         частота игровых тактов в секунду",
+            "  --max-players=100      максимум игроков в комнате",
+            "  --transport=nio        nio или blocking",
+            "  --executor=cached      cached или virtual (для blocking)",
+            "  --rooms                несколько комнат на одном порту",
+            "  --max-rooms=64         максимум комнат",
+            "  --metrics-interval=10  период журнала метрик в секундах, 0 — выключить",
+            "  --bundle=true          сообщения одного такта уходят игроку v2 одним кадром",
+            "  --legacy-positions     принимать координаты от клиентов v1 без команд ввода",
+            "  --config=server.properties  файл с теми же параметрами",
+            "Любой параметр можно задать и свойством -Dpleasure.server.<имя>.");
+
+    public static void main(String[] args) {
+        ServerConfig config;
+        try {
+            config = ServerConfig.fromArgs(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (Boolean.parseBoolean(config.get("help", "false"))) {
+            System.out.println(USAGE);
+            return;
+        }
+        config.apply();
+        System.out.println("Выделенный сервер: порт " + config.getPort() + ", тактов в секунду " + config.getTickRate()
+                + ", игроков в комнате до " + config.getMaxPlayers());
+
+        if (config.isRoomHost()) {
+            RoomManager manager = new RoomManager(config.getPort());
+            Runtime.getRuntime().addShutdownHook(new Thread(manager::stop));
+            manager.start();
+        } else {
+            SocketGameServer server = new SocketGameServer(config.getPort(), config.getTransport(), config.getSessionExecutor());
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            server.start();
+        }
+    }
+}
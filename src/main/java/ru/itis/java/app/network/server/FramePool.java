@@ -0,0 +1,91 @@
+package ru.itis.java.app.network.server;
+
+import ru.itis.java.app.network.protocol.GameProtocol;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class FramePool {
+    public static final int SMALL_FRAME_SIZE = 128;
+    public static final int LARGE_FRAME_SIZE = GameProtocol.MAX_FRAME_SIZE;
+    private static final int DEFAULT_MAX_POOLED = 1024;
+
+    private final Tier small;
+    private final Tier large;
+    private final AtomicLong allocatedCount = new AtomicLong();
+
+    private class Tier implements Consumer<ByteBuffer> {
+        private final int frameSize;
+        private final int maxPooled;
+        private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooled = new AtomicInteger();
+
+        Tier(int frameSize, int maxPooled) {
+            this.frameSize = frameSize;
+            this.maxPooled = maxPooled;
+        }
+
+        ByteBuffer acquire() {
+            ByteBuffer buffer = free.poll();
+            if (buffer == null) {
+                allocatedCount.incrementAndGet();
+                return ByteBuffer.allocateDirect(frameSize);
+            }
+            pooled.decrementAndGet();
+            return buffer;
+        }
+
+        @Override
+        public void accept(ByteBuffer buffer) {
+            if (pooled.incrementAndGet() > maxPooled) {
+                pooled.decrementAndGet();
+                return;
+            }
+            buffer.clear();
+            free.offer(buffer);
+        }
+    }
+
+    public FramePool() {
+        this(DEFAULT_MAX_POOLED);
+    }
+
+    public FramePool(int maxPooled) {
+        this.small = new Tier(SMALL_FRAME_SIZE, maxPooled);
+        this.large = new Tier(LARGE_FRAME_SIZE, Math.max(1, maxPooled / 16));
+    }
+
+    public ByteBuffer acquire() {
+        return small.acquire();
+    }
+
+    public ByteBuffer acquire(int maxFrameSize) {
+        if (maxFrameSize <= SMALL_FRAME_SIZE) {
+            return small.acquire();
+        }
+        if (maxFrameSize <= LARGE_FRAME_SIZE) {
+            return large.acquire();
+        }
+        allocatedCount.incrementAndGet();
+        return ByteBuffer.allocate(maxFrameSize);
+    }
+
+    public OutboundFrame frame(ByteBuffer buffer) {
+        buffer.flip();
+        int capacity = buffer.capacity();
+        if (buffer.isDirect() && capacity == SMALL_FRAME_SIZE) {
+            return OutboundFrame.of(buffer, small);
+        }
+        if (buffer.isDirect() && capacity == LARGE_FRAME_SIZE) {
+            return OutboundFrame.of(buffer, large);
+        }
+        return OutboundFrame.of(buffer, null);
+    }
+
+    public long getAllocatedCount() {
+        return allocatedCount.get();
+    }
+}
@@ -0,0 +1,81 @@
+package ru.itis.java.app.network.server;
+
+import ru.itis.java.app.network.protocol.SnapshotBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class InterestManager {
+    public static final int TILE_SIZE = 48;
+    public static final int DEFAULT_RADIUS_TILES = 12;
+    public static final int DEFAULT_HYSTERESIS_TILES = 2;
+
+    private final int enterRadius;
+    private final int exitRadius;
+    private int[] candidates = new int[0];
+
+    public InterestManager(int radiusTiles, int hysteresisTiles) {
+        this.enterRadius = radiusTiles * TILE_SIZE;
+        this.exitRadius = (radiusTiles + Math.max(0, hysteresisTiles)) * TILE_SIZE;
+    }
+
+    public static InterestManager fromProperties() {
+        return new InterestManager(
+                Integer.getInteger("pleasure.server.aoiRadius", DEFAULT_RADIUS_TILES),
+                Integer.getInteger("pleasure.server.aoiHysteresis", DEFAULT_HYSTERESIS_TILES));
+    }
+
+    public boolean isEnabled() {
+        return enterRadius > 0;
+    }
+
+    public boolean isVisible(int viewerX, int viewerY, int x, int y, boolean wasVisible) {
+        if (!isEnabled()) {
+            return true;
+        }
+        long dx = x - viewerX;
+        long dy = y - viewerY;
+        long radius = wasVisible ? exitRadius : enterRadius;
+        return dx * dx + dy * dy <= radius * radius;
+    }
+
+    public boolean canSee(PlayerState viewer, PlayerState subject, BitSet visible) {
+        if (viewer.getId() == subject.getId()) {
+            return true;
+        }
+        boolean wasVisible = visible.get(subject.getId());
+        return isVisible(viewer.getX(), viewer.getY(), subject.getX(), subject.getY(), wasVisible);
+    }
+
+    public void filter(PlayerState viewer, SnapshotBuffer snapshot, BitSet visible, SpatialGrid grid,
+                       SnapshotBuffer view) {
+        view.clear();
+        if (!isEnabled()) {
+            view.copyFrom(snapshot);
+            return;
+        }
+        int capacity = Math.max(grid.size(), snapshot.size()) + 1;
+        if (candidates.length < capacity) {
+            candidates = new int[capacity];
+        }
+        int count = grid.queryRange(viewer.getX(), viewer.getY(), exitRadius, candidates);
+        Arrays.sort(candidates, 0, count);
+        for (int i = 0; i < count; i++) {
+            int row = snapshot.indexOf(candidates[i]);
+            if (row < 0) {
+                continue;
+            }
+            int id = snapshot.getId(row);
+            if (id == viewer.getId()
+                    || isVisible(viewer.getX(), viewer.getY(), snapshot.getX(row), snapshot.getY(row), visible.get(id))) {
+                view.addRow(snapshot, row);
+            }
+        }
+        visible.clear();
+        for (int row = 0; row < view.size(); row++) {
+            visible.set(view.getId(row));
+        }
+    }
+
+    public int getEnterRadius() { return enterRadius; }
+    public int getExitRadius() { return exitRadius; }
+}
@@ -0,0 +1,86 @@
+package ru.itis.java.app.network.server;
+
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.protocol.IdRegistry;
+import ru.itis.java.app.tiles.TileCollisionMap;
+
+// Replays one client frame of held keys with the same rules as NetworkPlayer.updateMovement,
+// so a client that predicts its own movement ends up exactly where the server puts it.
+class MovementSimulator {
+    static final long STEP_NANOS = 1_000_000_000L / GameProtocol.INPUT_FRAME_RATE;
+
+    private static final int SOLID_X = 8;
+    private static final int SOLID_Y = 0;
+    private static final int SOLID_WIDTH = 32;
+    private static final int SOLID_HEIGHT = 40;
+    private static final int ITEM_SIZE = 48;
+
+    private final TileCollisionMap collisionMap;
+
+    MovementSimulator(TileCollisionMap collisionMap) {
+        this.collisionMap = collisionMap;
+    }
+
+    void step(PlayerState state, int mask, IdRegistry<ItemState> items) {
+        if ((mask & GameProtocol.INPUT_MOVE_MASK) == 0) {
+            state.setLastSpriteNum((byte) 1);
+            state.setSpriteCounter(0);
+            return;
+        }
+        String direction = state.getDirection();
+        if ((mask & GameProtocol.INPUT_UP) != 0) direction = "up";
+        if ((mask & GameProtocol.INPUT_DOWN) != 0) direction = "down";
+        if ((mask & GameProtocol.INPUT_LEFT) != 0) direction = "left";
+        if ((mask & GameProtocol.INPUT_RIGHT) != 0) direction = "right";
+        state.setDirection(direction);
+
+        int x = state.getX();
+        int y = state.getY();
+        int speed = GameProtocol.PLAYER_SPEED;
+        boolean moved = false;
+        if (!collisionMap.isBlocked(x, y, SOLID_X, SOLID_Y, SOLID_WIDTH, SOLID_HEIGHT, direction, speed)
+                && !blockedByItem(x, y, direction, speed, items)) {
+            switch (direction) {
+                case "up": y -= speed; break;
+                case "down": y += speed; break;
+                case "left": x -= speed; break;
+                case "right": x += speed; break;
+            }
+            moved = true;
+        }
+        state.setX(Math.max(GameProtocol.MIN_X, Math.min(x, GameProtocol.MAX_X)));
+        state.setY(Math.max(GameProtocol.MIN_Y, Math.min(y, GameProtocol.MAX_Y)));
+        if (moved) {
+            state.setSpriteCounter(state.getSpriteCounter() + 1);
+            if (state.getSpriteCounter() > 12) {
+                state.setLastSpriteNum((byte) (state.getLastSpriteNum() == 1 ? 2 : 1));
+                state.setSpriteCounter(0);
+            }
+        } else {
+            state.setLastSpriteNum((byte) 1);
+            state.setSpriteCounter(0);
+        }
+    }
+
+    // Same probe as CollisionChecker.checkObject; JavaFX bounds intersect inclusively, hence <=.
+    private boolean blockedByItem(int x, int y, String direction, int speed, IdRegistry<ItemState> items) {
+        int left = x + SOLID_X;
+        int top = y + SOLID_Y;
+        switch (direction) {
+            case "up": top -= speed; break;
+            case "down": top += speed; break;
+            case "left": left -= speed; break;
+            case "right": left += speed; break;
+        }
+        for (ItemState item : items) {
+            if (item.isCollected() || !"Door".equals(item.getType())) {
+                continue;
+            }
+            if (left <= item.getX() + ITEM_SIZE && left + SOLID_WIDTH >= item.getX()
+                    && top <= item.getY() + ITEM_SIZE && top + SOLID_HEIGHT >= item.getY()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,71 @@
+package ru.itis.java.app.network.server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class NioPlayerSession extends PlayerSession {
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    private volatile SelectionKey key;
+
+    public NioPlayerSession(SocketChannel channel, PlayerState state) {
+        super(channel, state);
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+        if (!outbound.isEmpty()) {
+            writeScheduled.set(true);
+            requestWrite();
+        }
+    }
+
+    @Override
+    protected void onEnqueued() {
+        if (writeScheduled.compareAndSet(false, true)) {
+            requestWrite();
+        }
+    }
+
+    void flushPending() throws IOException {
+        while (true) {
+            if (!batch.hasRemaining()) {
+                batch.release();
+                if (outbound.drainTo(batch) == 0) {
+                    break;
+                }
+                recordFlush();
+            }
+            recordWrite(channel.write(batch.getBuffers(), 0, batch.getCount()));
+            if (batch.hasRemaining()) {
+                return;
+            }
+        }
+        SelectionKey current = key;
+        if (current != null && current.isValid()) {
+            current.interestOps(SelectionKey.OP_READ);
+        }
+        writeScheduled.set(false);
+        if (!outbound.isEmpty() && writeScheduled.compareAndSet(false, true)) {
+            requestWrite();
+        }
+    }
+
+    private void requestWrite() {
+        SelectionKey current = key;
+        if (current != null && current.isValid()) {
+            current.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            current.selector().wakeup();
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        SelectionKey current = key;
+        if (current != null) {
+            current.cancel();
+        }
+        super.disconnect();
+    }
+}
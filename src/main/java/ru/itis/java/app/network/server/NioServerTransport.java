@@ -0,0 +1,157 @@
+package ru.itis.java.app.network.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+class NioServerTransport {
+    private final SessionHost server;
+    private final int port;
+    private final Reactor[] reactors;
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private volatile boolean running = true;
+    private int nextReactor = 0;
+
+    NioServerTransport(SessionHost server, int port, int ioThreads) {
+        this.server = server;
+        this.port = port;
+        this.reactors = new Reactor[Math.max(1, ioThreads)];
+    }
+
+    void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i] = new Reactor(Selector.open());
+            Thread thread = new Thread(reactors[i], "nio-reactor-" + port + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        while (running) {
+            acceptSelector.select();
+            if (!running) break;
+            Iterator<SelectionKey> keys = acceptSelector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isValid() && key.isAcceptable()) {
+                    SocketChannel channel = serverChannel.accept();
+                    if (channel != null) {
+                        channel.configureBlocking(false);
+                        channel.socket().setTcpNoDelay(true);
+                        reactors[nextReactor].register(channel);
+                        nextReactor = (nextReactor + 1) % reactors.length;
+                    }
+                }
+            }
+        }
+    }
+
+    void stop() {
+        running = false;
+        try {
+            if (acceptSelector != null) {
+                acceptSelector.wakeup();
+            }
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+        }
+        for (Reactor reactor : reactors) {
+            if (reactor != null) {
+                reactor.close();
+            }
+        }
+    }
+
+    private class Reactor implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+
+        Reactor(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(SocketChannel channel) {
+            pendingChannels.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    registerPending();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioPlayerSession session = (NioPlayerSession) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                read(session);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                session.flushPending();
+                            }
+                        } catch (IOException | CancelledKeyException e) {
+                            server.closeSession(session);
+                        }
+                    }
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (IOException e) {
+                    if (running) {
+                        System.err.println("Ошибка NIO-реактора на порту " + port + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                SocketChannel accepted = channel;
+                NioPlayerSession session = null;
+                try {
+                    session = (NioPlayerSession) server.openSession(state -> new NioPlayerSession(accepted, state));
+                    SelectionKey key = accepted.register(selector, SelectionKey.OP_READ, session);
+                    session.attach(key);
+                } catch (IOException e) {
+                    if (session != null) {
+                        server.closeSession(session);
+                    } else {
+                        try {
+                            accepted.close();
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            }
+        }
+
+        private void read(NioPlayerSession session) throws IOException {
+            if (session.readPackets() == -1) {
+                server.closeSession(session);
+            }
+        }
+
+        void close() {
+            try {
+                selector.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ru.itis.java.app.network.server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public final class OutboundFrame {
+    private final ByteBuffer data;
+    private final ByteBuffer source;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    private final Consumer<ByteBuffer> recycler;
+
+    private OutboundFrame(ByteBuffer source, Consumer<ByteBuffer> recycler) {
+        this.data = source.asReadOnlyBuffer();
+        this.source = source;
+        this.recycler = recycler;
+    }
+
+    public static OutboundFrame wrap(byte[] bytes) {
+        return new OutboundFrame(ByteBuffer.wrap(bytes), null);
+    }
+
+    public static OutboundFrame of(ByteBuffer buffer, Consumer<ByteBuffer> recycler) {
+        return new OutboundFrame(buffer, recycler);
+    }
+
+    public OutboundFrame retain() {
+        if (refCount.getAndIncrement() <= 0) {
+            refCount.decrementAndGet();
+            throw new IllegalStateException("Frame already released");
+        }
+        return this;
+    }
+
+    public void release() {
+        int remaining = refCount.decrementAndGet();
+        if (remaining == 0) {
+            if (recycler != null) {
+                recycler.accept(source);
+            }
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Frame released too many times");
+        }
+    }
+
+    public ByteBuffer view() {
+        return data.duplicate();
+    }
+
+    public int length() {
+        return data.remaining();
+    }
+
+    public int refCount() {
+        return refCount.get();
+    }
+}
@@ -0,0 +1,245 @@
+package ru.itis.java.app.network.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class OutboundQueue {
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int DEFAULT_MAX_PENDING_BYTES = 1 << 20;
+
+    private final int capacity;
+    private final int maxEntries;
+    private final int maxPendingBytes;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int pendingBytes = 0;
+    private int maxDepth = 0;
+    private long enqueuedCount = 0;
+    private long droppedCount = 0;
+    private boolean closed = false;
+    private boolean overflowed = false;
+
+    private static class Entry {
+        final OutboundFrame frame;
+        final ByteBuffer view;
+        final boolean droppable;
+
+        Entry(OutboundFrame frame, boolean droppable) {
+            this.frame = frame;
+            this.view = frame.view();
+            this.droppable = droppable;
+        }
+    }
+
+    public static class Batch {
+        private OutboundFrame[] frames = new OutboundFrame[16];
+        private ByteBuffer[] buffers = new ByteBuffer[16];
+        private int count = 0;
+
+        void add(Entry entry) {
+            if (count == frames.length) {
+                frames = Arrays.copyOf(frames, count * 2);
+                buffers = Arrays.copyOf(buffers, count * 2);
+            }
+            frames[count] = entry.frame;
+            buffers[count] = entry.view;
+            count++;
+        }
+
+        public boolean hasRemaining() {
+            return count > 0 && buffers[count - 1].hasRemaining();
+        }
+
+        public void release() {
+            for (int i = 0; i < count; i++) {
+                frames[i].release();
+                frames[i] = null;
+                buffers[i] = null;
+            }
+            count = 0;
+        }
+
+        public ByteBuffer[] getBuffers() { return buffers; }
+        public int getCount() { return count; }
+    }
+
+    public OutboundQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public OutboundQueue(int capacity) {
+        this(capacity, DEFAULT_MAX_PENDING_BYTES);
+    }
+
+    // capacity is where droppable frames start to be shed; maxEntries and maxPendingBytes are hard limits
+    // for frames that cannot be dropped, past which the client is too far behind to keep.
+    public OutboundQueue(int capacity, int maxPendingBytes) {
+        this.capacity = capacity;
+        this.maxEntries = capacity * 4;
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    public boolean offer(OutboundFrame frame, boolean droppable) {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (entries.size() >= capacity && !dropOldestDroppable()) {
+                if (droppable) {
+                    droppedCount++;
+                    return false;
+                }
+                if (entries.size() >= maxEntries || pendingBytes + frame.length() > maxPendingBytes) {
+                    overflowed = true;
+                    closeLocked();
+                    return false;
+                }
+            }
+            entries.addLast(new Entry(frame.retain(), droppable));
+            pendingBytes += frame.length();
+            enqueuedCount++;
+            maxDepth = Math.max(maxDepth, entries.size());
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean dropOldestDroppable() {
+        Iterator<Entry> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.droppable) {
+                iterator.remove();
+                pendingBytes -= entry.frame.length();
+                entry.frame.release();
+                droppedCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean awaitPending(long timeout, TimeUnit unit) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = unit.toNanos(timeout);
+            while (entries.isEmpty() && !closed) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return !entries.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int drainTo(Batch batch) {
+        lock.lock();
+        try {
+            Entry entry;
+            while ((entry = entries.pollFirst()) != null) {
+                batch.add(entry);
+            }
+            pendingBytes = 0;
+            return batch.count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closeLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeLocked() {
+        closed = true;
+        Entry entry;
+        while ((entry = entries.pollFirst()) != null) {
+            entry.frame.release();
+        }
+        pendingBytes = 0;
+        notEmpty.signalAll();
+    }
+
+    public boolean isOverflowed() {
+        lock.lock();
+        try {
+            return overflowed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return entries.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getPendingBytes() {
+        lock.lock();
+        try {
+            return pendingBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getDepth() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxDepth() {
+        lock.lock();
+        try {
+            return maxDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEnqueuedCount() {
+        lock.lock();
+        try {
+            return enqueuedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return droppedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() { return capacity; }
+    public int getMaxPendingBytes() { return maxPendingBytes; }
+}
@@ -1,42 +1,273 @@
 package ru.itis.java.app.network.server;
 
+import ru.itis.java.app.network.protocol.GamePacket;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.protocol.PacketEncoder;
+import ru.itis.java.app.network.protocol.StreamingPacketDecoder;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
 
-public class PlayerSession {
-    private Socket socket;
-    private DataInputStream rawIn;
-    private DataOutputStream rawOut;
-    private PlayerState state;
-    private boolean connected = true;
-    private ByteArrayOutputStream messageBuffer = new ByteArrayOutputStream();
+public class PlayerSession implements PlayerSessionMBean {
+    protected final SocketChannel channel;
+    private volatile PlayerState state;
+    protected volatile boolean connected = true;
+    private final StreamingPacketDecoder decoder = new StreamingPacketDecoder(false);
+    private volatile StreamingPacketDecoder.PacketHandler packetHandler;
+    private final StreamingPacketDecoder.PacketHandler dispatcher = this::dispatch;
+    protected final OutboundQueue outbound = new OutboundQueue();
+    protected final OutboundQueue.Batch batch = new OutboundQueue.Batch();
+    private volatile long flushCount = 0;
+    private volatile long bytesWritten = 0;
+    private volatile long bytesRead = 0;
+    private volatile long packetsRead = 0;
+    private ServerMetrics metrics;
+    private volatile SessionHost host;
+    private volatile int protocolVersion = GameProtocol.PROTOCOL_V1;
+    private volatile int ackedSnapshot = -1;
+    private final SnapshotRing snapshotHistory = new SnapshotRing();
+    private final BitSet visiblePlayers = new BitSet();
+    private final Object protocolLock = new Object();
+    private FramePool bundlePool;
+    private PacketEncoder bundleEncoder;
+    private OutboundFrame[] bundled = new OutboundFrame[16];
+    private ByteBuffer[] bundledViews = new ByteBuffer[16];
+    private int bundledCount = 0;
+    private int bundledBytes = 0;
+    private boolean bundledDroppable = true;
 
-    public PlayerSession(Socket socket, PlayerState state) throws IOException {
-        this.socket = socket;
+    public PlayerSession(SocketChannel channel, PlayerState state) {
+        this.channel = channel;
+        this.state = state;
+    }
+
+    public int readPackets() throws IOException {
+        int read = decoder.readFrom(channel);
+        if (read > 0) {
+            int decoded = decoder.decode(dispatcher);
+            bytesRead += read;
+            packetsRead += decoded;
+            if (metrics != null) {
+                metrics.recordRead(read, decoded);
+            }
+        }
+        return read;
+    }
+
+    void dispatch(GamePacket packet) throws IOException {
+        packetHandler.onPacket(packet);
+    }
+
+    void assign(PlayerState state) {
         this.state = state;
-        this.rawIn = new DataInputStream(socket.getInputStream());
-        this.rawOut = new DataOutputStream(socket.getOutputStream());
     }
 
     public void sendRaw(byte[] data) throws IOException {
-        synchronized (rawOut) {
-            rawOut.write(data);
-            rawOut.flush();
+        sendRaw(data, false);
+    }
+
+    public void sendRaw(byte[] data, boolean droppable) throws IOException {
+        OutboundFrame frame = OutboundFrame.wrap(data);
+        try {
+            sendFrame(frame, droppable);
+        } finally {
+            frame.release();
+        }
+    }
+
+    public void sendFrame(OutboundFrame frame, boolean droppable) throws IOException {
+        if (!connected) {
+            throw new IOException("Session closed");
+        }
+        if (metrics != null) {
+            metrics.recordPacketWritten();
         }
+        enqueue(frame, droppable);
+    }
+
+    private void enqueue(OutboundFrame frame, boolean droppable) throws IOException {
+        if (!connected) {
+            throw new IOException("Session closed");
+        }
+        if (outbound.offer(frame, droppable)) {
+            onEnqueued();
+        } else if (outbound.isOverflowed()) {
+            PlayerState current = state;
+            System.err.println("Очередь отправки игрока " + (current != null ? current.getId() : "?")
+                    + " переполнена, отключаем");
+            SessionHost owner = host;
+            if (owner != null) {
+                owner.closeSession(this);
+            } else {
+                disconnect();
+            }
+            throw new IOException("Outbound queue overflow");
+        }
+    }
+
+    void send(VersionedFrame frame, boolean droppable) throws IOException {
+        synchronized (protocolLock) {
+            sendFrame(frame.forVersion(protocolVersion), droppable);
+        }
+    }
+
+    void enableBundling(FramePool pool, PacketEncoder encoder) {
+        this.bundlePool = pool;
+        this.bundleEncoder = encoder;
+    }
+
+    // Tick thread only. Returns how many frames are now waiting for flushBundle(), 0 if the frame was not staged:
+    // v1 frames are escaped and cannot be nested, so those sessions keep one frame per message.
+    int stage(VersionedFrame frame, boolean droppable) throws IOException {
+        if (bundlePool == null || protocolVersion < GameProtocol.PROTOCOL_V2) {
+            return 0;
+        }
+        if (!connected) {
+            throw new IOException("Session closed");
+        }
+        OutboundFrame encoded = frame.forVersion(GameProtocol.PROTOCOL_V2);
+        if (bundledCount > 0 && GameProtocol.bundleSize(bundledBytes + encoded.length()) > GameProtocol.MAX_BUNDLE_SIZE) {
+            flushBundle();
+        }
+        if (bundledCount == bundled.length) {
+            bundled = Arrays.copyOf(bundled, bundledCount * 2);
+            bundledViews = Arrays.copyOf(bundledViews, bundledCount * 2);
+        }
+        bundled[bundledCount] = encoded.retain();
+        bundledViews[bundledCount] = encoded.view();
+        bundledCount++;
+        bundledBytes += encoded.length();
+        bundledDroppable &= droppable;
+        if (metrics != null) {
+            metrics.recordPacketWritten();
+        }
+        return bundledCount;
+    }
+
+    void flushBundle() throws IOException {
+        if (bundledCount == 0) {
+            return;
+        }
+        try {
+            if (bundledCount == 1) {
+                enqueue(bundled[0], bundledDroppable);
+            } else {
+                ByteBuffer buffer = bundlePool.acquire(GameProtocol.bundleSize(bundledBytes));
+                bundleEncoder.encodeBundle(buffer, bundledViews, bundledCount);
+                OutboundFrame bundle = bundlePool.frame(buffer);
+                try {
+                    enqueue(bundle, bundledDroppable);
+                } finally {
+                    bundle.release();
+                }
+            }
+        } finally {
+            for (int i = 0; i < bundledCount; i++) {
+                bundled[i].release();
+                bundled[i] = null;
+                bundledViews[i] = null;
+            }
+            bundledCount = 0;
+            bundledBytes = 0;
+            bundledDroppable = true;
+        }
+    }
+
+    void upgradeProtocol(int version, VersionedFrame ack) throws IOException {
+        synchronized (protocolLock) {
+            sendFrame(ack.forVersion(protocolVersion), false);
+            protocolVersion = version;
+        }
+        decoder.setProtocolVersion(version);
+    }
+
+    void ackSnapshot(int seq) {
+        int current = ackedSnapshot;
+        if (current < 0 || GameProtocol.isNewerSequence(seq, current)) {
+            ackedSnapshot = seq;
+        }
+    }
+
+    protected void onEnqueued() {
+    }
+
+    public void runWriter() {
+        try {
+            while (connected) {
+                if (!outbound.awaitPending(1, TimeUnit.SECONDS)) {
+                    continue;
+                }
+                if (outbound.drainTo(batch) > 0) {
+                    recordFlush();
+                    while (batch.hasRemaining()) {
+                        recordWrite(channel.write(batch.getBuffers(), 0, batch.getCount()));
+                    }
+                    batch.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+        } finally {
+            batch.release();
+            disconnect();
+        }
+    }
+
+    protected void recordFlush() {
+        flushCount++;
+    }
+
+    protected void recordWrite(long bytes) {
+        bytesWritten += bytes;
+        if (metrics != null) {
+            metrics.recordWritten(bytes);
+        }
+    }
+
+    void setMetrics(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setHost(SessionHost host) {
+        this.host = host;
     }
 
     public void disconnect() {
         connected = false;
+        outbound.close();
         try {
-            socket.close();
+            channel.close();
         } catch (IOException e) {
         }
     }
 
-    public Socket getSocket() { return socket; }
-    public DataInputStream getRawIn() { return rawIn; }
-    public DataOutputStream getRawOut() { return rawOut; }
+    public Socket getSocket() { return channel.socket(); }
+    public SocketChannel getChannel() { return channel; }
     public PlayerState getState() { return state; }
     public boolean isConnected() { return connected; }
-    public ByteArrayOutputStream getMessageBuffer() { return messageBuffer; }
-}
\ No newline at end of file
+    public StreamingPacketDecoder getDecoder() { return decoder; }
+    public void setPacketHandler(StreamingPacketDecoder.PacketHandler packetHandler) { this.packetHandler = packetHandler; }
+    public OutboundQueue getOutbound() { return outbound; }
+    public int getQueueDepth() { return outbound.getDepth(); }
+    public long getFlushCount() { return flushCount; }
+    public long getBytesWritten() { return bytesWritten; }
+    public long getBytesRead() { return bytesRead; }
+    public long getPacketsRead() { return packetsRead; }
+    public long getPacketsWritten() { return outbound.getEnqueuedCount(); }
+    public long getDroppedFrames() { return outbound.getDroppedCount(); }
+    public int getMaxQueueDepth() { return outbound.getMaxDepth(); }
+    public int getPlayerId() {
+        PlayerState current = state;
+        return current != null ? current.getId() : 0;
+    }
+    public int getProtocolVersion() { return protocolVersion; }
+    public int getAckedSnapshot() { return ackedSnapshot; }
+    public SnapshotRing getSnapshotHistory() { return snapshotHistory; }
+    // Tick thread only.
+    public BitSet getVisiblePlayers() { return visiblePlayers; }
+}
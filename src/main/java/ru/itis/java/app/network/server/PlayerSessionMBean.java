@@ -0,0 +1,14 @@
+package ru.itis.java.app.network.server;
+
+public interface PlayerSessionMBean {
+    int getPlayerId();
+    int getProtocolVersion();
+    long getBytesRead();
+    long getBytesWritten();
+    long getPacketsRead();
+    long getPacketsWritten();
+    long getDroppedFrames();
+    long getFlushCount();
+    int getQueueDepth();
+    int getMaxQueueDepth();
+}
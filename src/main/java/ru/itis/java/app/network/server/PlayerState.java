@@ -2,16 +2,24 @@ package ru.itis.java.app.network.server;
 
 import ru.itis.java.app.entity.PlayerStats;
 import ru.itis.java.app.entity.LevelSystem;
+import ru.itis.java.app.network.protocol.GameProtocol;
 
 public class PlayerState {
     private int id;
-    private int x = 100, y = 100;
+    private int x = GameProtocol.SPAWN_X, y = GameProtocol.SPAWN_Y;
     private String direction = "down";
     private byte lastSpriteNum = 1;
+    private int spriteCounter = 0;
     private PlayerStats stats;
     private long lastUpdateTime;
+    private int lastInputSeq = -1;
+    private int lastInputX = -1, lastInputY = -1;
+    private boolean inputCommands = false;
+    private long inputBudgetNanos = 0;
     private boolean isDead = false;
     private int deathTimer = 0;
+    // Both in ticks, so the order holds at any tick rate: a dead session is dropped before it would respawn.
+    public static final int DEATH_DISCONNECT_TIME = 150;
     public static final int DEATH_RESPAWN_TIME = 180;
     private int keys = 0;
     private int swords = 0;
@@ -52,8 +60,22 @@ public class PlayerState {
         stats.setHealth(stats.getMaxHealth());
         int lostExperience = (int)(stats.getExperience() * 0.1);
         stats.setExperience(Math.max(0, stats.getExperience() - lostExperience));
-        x = 100 + (id * 50) % 400;
-        y = 100 + (id * 30) % 300;
+        x = GameProtocol.SPAWN_X;
+        y = GameProtocol.SPAWN_Y;
+    }
+
+    // Movement a client may replay is bounded by elapsed server time, so batching inputs cannot be
+    // used to move faster than one step per client frame.
+    public void refillInputBudget(long nanos, long maxNanos) {
+        inputBudgetNanos = Math.min(inputBudgetNanos + nanos, maxNanos);
+    }
+
+    public boolean spendInputBudget(long nanos) {
+        if (inputBudgetNanos < nanos) {
+            return false;
+        }
+        inputBudgetNanos -= nanos;
+        return true;
     }
 
     public boolean isAlive() {
@@ -74,9 +96,21 @@ public class PlayerState {
     public void setDirection(String direction) { this.direction = direction; }
     public byte getLastSpriteNum() { return lastSpriteNum; }
     public void setLastSpriteNum(byte lastSpriteNum) { this.lastSpriteNum = lastSpriteNum; }
+    public int getSpriteCounter() { return spriteCounter; }
+    public void setSpriteCounter(int spriteCounter) { this.spriteCounter = spriteCounter; }
+    public boolean usesInputCommands() { return inputCommands; }
+    public void setInputCommands(boolean inputCommands) { this.inputCommands = inputCommands; }
     public PlayerStats getStats() { return stats; }
     public long getLastUpdateTime() { return lastUpdateTime; }
     public void setLastUpdateTime(long lastUpdateTime) { this.lastUpdateTime = lastUpdateTime; }
+    public int getLastInputSeq() { return lastInputSeq; }
+    public void setLastInputSeq(int lastInputSeq) { this.lastInputSeq = lastInputSeq; }
+    public int getLastInputX() { return lastInputX; }
+    public int getLastInputY() { return lastInputY; }
+    public void setLastInput(int x, int y) {
+        this.lastInputX = x;
+        this.lastInputY = y;
+    }
     public boolean isDead() { return isDead; }
     public int getDeathTimer() { return deathTimer; }
     public int getKeys() { return keys; }
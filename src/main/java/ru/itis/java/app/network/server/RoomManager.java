@@ -0,0 +1,149 @@
+package ru.itis.java.app.network.server;
+
+import ru.itis.java.app.network.protocol.GamePacket;
+import ru.itis.java.app.network.protocol.GameProtocol;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RoomManager implements SessionHost {
+    public static final int DEFAULT_MAX_ROOMS = 64;
+    public static final long DEFAULT_ROUTING_TIMEOUT_MILLIS = 300;
+    private static final long EMPTY_ROOM_SWEEP_SECONDS = 30;
+
+    private final int port;
+    private final int maxRooms;
+    private final long routingTimeoutMillis;
+    private final Map<Integer, SocketGameServer> rooms = new ConcurrentHashMap<>();
+    private final Map<PlayerSession, SocketGameServer> sessionRooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService tickPool;
+    private final NioServerTransport transport;
+
+    public RoomManager(int port) {
+        this(port,
+                Integer.getInteger("pleasure.server.ioThreads", Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()))),
+                Integer.getInteger("pleasure.server.tickThreads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("pleasure.server.maxRooms", DEFAULT_MAX_ROOMS));
+    }
+
+    public RoomManager(int port, int ioThreads, int tickThreads, int maxRooms) {
+        this.port = port;
+        this.maxRooms = maxRooms;
+        this.routingTimeoutMillis = Long.getLong("pleasure.server.routingTimeout", DEFAULT_ROUTING_TIMEOUT_MILLIS);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.tickPool = Executors.newScheduledThreadPool(Math.max(1, tickThreads), runnable -> {
+            Thread thread = new Thread(runnable, "room-tick-" + port + "-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.transport = new NioServerTransport(this, port, ioThreads);
+    }
+
+    public void start() {
+        getOrCreateRoom(GameProtocol.DEFAULT_ROOM);
+        tickPool.scheduleAtFixedRate(this::closeEmptyRooms, EMPTY_ROOM_SWEEP_SECONDS, EMPTY_ROOM_SWEEP_SECONDS, TimeUnit.SECONDS);
+        System.out.println("Хост комнат запущен на порту: " + port + " (максимум комнат: " + maxRooms + ")");
+        try {
+            transport.start();
+        } catch (IOException e) {
+            System.err.println("Ошибка хоста комнат на порту " + port + ": " + e.getMessage());
+        }
+    }
+
+    public void stop() {
+        transport.stop();
+        for (SocketGameServer room : rooms.values()) {
+            room.disconnectAll();
+            room.stop();
+        }
+        rooms.clear();
+        sessionRooms.clear();
+        tickPool.shutdownNow();
+        System.out.println("Хост комнат на порту " + port + " остановлен");
+    }
+
+    public synchronized SocketGameServer getOrCreateRoom(int roomId) {
+        SocketGameServer room = rooms.get(roomId);
+        if (room == null) {
+            if (roomId < 0 || roomId > GameProtocol.MAX_ROOM_ID || rooms.size() >= maxRooms) {
+                return null;
+            }
+            room = new SocketGameServer(port, roomId, tickPool);
+            room.startHosted();
+            rooms.put(roomId, room);
+            System.out.println("Комната " + roomId + " создана");
+        }
+        return room;
+    }
+
+    public SocketGameServer getRoom(int roomId) {
+        return rooms.get(roomId);
+    }
+
+    public Collection<SocketGameServer> getRooms() {
+        return rooms.values();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public PlayerSession openSession(SocketGameServer.SessionFactory factory) throws IOException {
+        PlayerSession session = factory.create(null);
+        session.setPacketHandler(packet -> route(session, packet));
+        tickPool.schedule(() -> assign(session, GameProtocol.DEFAULT_ROOM), routingTimeoutMillis, TimeUnit.MILLISECONDS);
+        return session;
+    }
+
+    @Override
+    public void closeSession(PlayerSession session) {
+        session.disconnect();
+        SocketGameServer room;
+        synchronized (this) {
+            room = sessionRooms.remove(session);
+        }
+        if (room != null) {
+            room.closeSession(session);
+        }
+    }
+
+    private void route(PlayerSession session, GamePacket packet) throws IOException {
+        boolean roomRequest = packet.getType() == GameProtocol.TYPE_HANDSHAKE && packet.getRoomId() >= 0;
+        SocketGameServer room = assign(session, roomRequest ? packet.getRoomId() : GameProtocol.DEFAULT_ROOM);
+        if (room != null && !roomRequest) {
+            session.dispatch(packet);
+        }
+    }
+
+    private synchronized SocketGameServer assign(PlayerSession session, int roomId) {
+        if (sessionRooms.containsKey(session) || !session.isConnected()) {
+            return null;
+        }
+        SocketGameServer room = getOrCreateRoom(roomId);
+        if (room == null) {
+            System.err.println("Не удалось открыть комнату " + roomId + " (предел комнат: " + maxRooms + ")");
+            session.disconnect();
+            return null;
+        }
+        room.attachSession(session);
+        sessionRooms.put(session, room);
+        return room;
+    }
+
+    private synchronized void closeEmptyRooms() {
+        sessionRooms.keySet().removeIf(session -> !session.isConnected());
+        // A session attached by assign() is only counted by the room once its JOIN runs on the room's tick thread.
+        Set<SocketGameServer> occupied = new HashSet<>(sessionRooms.values());
+        for (SocketGameServer room : rooms.values()) {
+            if (room.getRoomId() != GameProtocol.DEFAULT_ROOM && room.getPlayerCount() == 0 && !occupied.contains(room)) {
+                rooms.remove(room.getRoomId());
+                room.stop();
+            }
+        }
+    }
+}
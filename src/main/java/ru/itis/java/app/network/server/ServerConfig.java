@@ -0,0 +1,119 @@
+package ru.itis.java.app.network.server;
+
+import ru.itis.java.app.network.protocol.GameProtocol;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+public class ServerConfig {
+    public static final String PROPERTY_PREFIX = "pleasure.server.";
+    public static final int DEFAULT_PORT = 1234;
+
+    private final Properties properties = new Properties();
+
+    public static ServerConfig fromArgs(String[] args) throws IOException {
+        ServerConfig config = new ServerConfig();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(PROPERTY_PREFIX)) {
+                config.properties.setProperty(name, System.getProperty(name));
+            }
+        }
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Неизвестный аргумент: " + arg);
+            }
+            String key = arg.substring(2);
+            String value;
+            int separator = key.indexOf('=');
+            if (separator >= 0) {
+                value = key.substring(separator + 1);
+                key = key.substring(0, separator);
+            } else if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                value = args[++i];
+            } else {
+                value = "true";
+            }
+            if (key.equals("config")) {
+                config.load(value);
+            } else {
+                config.properties.setProperty(PROPERTY_PREFIX + toPropertyName(key), value);
+            }
+        }
+        config.properties.putIfAbsent(PROPERTY_PREFIX + "transport", "nio");
+        return config;
+    }
+
+    private void load(String path) throws IOException {
+        Properties file = new Properties();
+        try (InputStream in = new FileInputStream(path)) {
+            file.load(in);
+        }
+        for (String name : file.stringPropertyNames()) {
+            String key = name.startsWith(PROPERTY_PREFIX) ? name : PROPERTY_PREFIX + toPropertyName(name);
+            properties.putIfAbsent(key, file.getProperty(name));
+        }
+    }
+
+    public void apply() {
+        for (String name : properties.stringPropertyNames()) {
+            System.setProperty(name, properties.getProperty(name));
+        }
+    }
+
+    public String get(String key, String defaultValue) {
+        return properties.getProperty(PROPERTY_PREFIX + key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректное значение " + key + ": " + value);
+        }
+    }
+
+    public int getPort() {
+        return getInt("port", DEFAULT_PORT);
+    }
+
+    public int getTickRate() {
+        return getInt("tickRate", TickLoop.DEFAULT_TICK_RATE);
+    }
+
+    public int getMaxPlayers() {
+        return getInt("maxPlayers", GameProtocol.MAX_PLAYERS);
+    }
+
+    public boolean isRoomHost() {
+        return Boolean.parseBoolean(get("rooms", "false"));
+    }
+
+    public ServerTransport getTransport() {
+        return ServerTransport.fromString(get("transport", null));
+    }
+
+    public SessionExecutor getSessionExecutor() {
+        return SessionExecutor.fromString(get("executor", null));
+    }
+
+    static String toPropertyName(String option) {
+        StringBuilder name = new StringBuilder(option.length());
+        boolean upper = false;
+        for (int i = 0; i < option.length(); i++) {
+            char c = option.charAt(i);
+            if (c == '-') {
+                upper = true;
+            } else {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+}
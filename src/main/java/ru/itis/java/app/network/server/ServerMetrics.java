@@ -0,0 +1,240 @@
+package ru.itis.java.app.network.server;
+
+import ru.itis.java.app.network.protocol.IdRegistry;
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ServerMetrics implements ServerMetricsMBean {
+    public static final int DEFAULT_LOG_INTERVAL_SECONDS = 10;
+    private static final String DOMAIN = "ru.itis.java.app.network.server";
+
+    public enum Phase {
+        INPUT_DRAIN, SIMULATION, ENCODE, SEND
+    }
+
+    private final int port;
+    private final int roomId;
+    private final long tickPeriodNanos;
+    private final IdRegistry<PlayerSession> sessions;
+    private final LatencyHistogram tickDuration = new LatencyHistogram();
+    private final LatencyHistogram tickJitter = new LatencyHistogram();
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+    private final LatencyHistogram intervalTicks = new LatencyHistogram();
+    private final LatencyHistogram[] intervalPhases = new LatencyHistogram[Phase.values().length];
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder packetsRead = new LongAdder();
+    private final LongAdder packetsWritten = new LongAdder();
+    private volatile long skippedTicks = 0;
+    private volatile long failedCommands = 0;
+    private volatile int pendingCommands = 0;
+    private long lastLogNanos = System.nanoTime();
+    private long lastBytesRead = 0;
+    private long lastBytesWritten = 0;
+    private long lastPacketsRead = 0;
+    private long lastPacketsWritten = 0;
+    private long lastSkippedTicks = 0;
+    private long lastFailedCommands = 0;
+
+    public ServerMetrics(int port, int tickRate, IdRegistry<PlayerSession> sessions) {
+        this(port, -1, tickRate, sessions);
+    }
+
+    public ServerMetrics(int port, int roomId, int tickRate, IdRegistry<PlayerSession> sessions) {
+        this.port = port;
+        this.roomId = roomId;
+        this.tickPeriodNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, tickRate);
+        this.sessions = sessions;
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+            intervalPhases[i] = new LatencyHistogram();
+        }
+    }
+
+    void recordTick(long durationNanos, long jitterNanos, int pending) {
+        tickDuration.record(durationNanos);
+        intervalTicks.record(durationNanos);
+        tickJitter.record(jitterNanos);
+        pendingCommands = pending;
+    }
+
+    void recordPhase(Phase phase, long nanos) {
+        phases[phase.ordinal()].record(nanos);
+        intervalPhases[phase.ordinal()].record(nanos);
+    }
+
+    void recordSkippedTicks(long count) {
+        skippedTicks += count;
+    }
+
+    void recordFailedCommand() {
+        failedCommands++;
+    }
+
+    void recordRead(long bytes, int packets) {
+        bytesRead.add(bytes);
+        packetsRead.add(packets);
+    }
+
+    void recordWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    void recordPacketWritten() {
+        packetsWritten.increment();
+    }
+
+    void register() {
+        register(serverName(), this, ServerMetricsMBean.class);
+    }
+
+    void unregister() {
+        unregister(serverName());
+    }
+
+    void registerSession(PlayerSession session) {
+        register(sessionName(session), session, PlayerSessionMBean.class);
+    }
+
+    void unregisterSession(PlayerSession session) {
+        unregister(sessionName(session));
+    }
+
+    String intervalReport() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - lastLogNanos) / 1e9);
+        long read = bytesRead.sum();
+        long written = bytesWritten.sum();
+        long packetsIn = packetsRead.sum();
+        long packetsOut = packetsWritten.sum();
+        long skipped = skippedTicks;
+        long failed = failedCommands;
+        String report = String.format(Locale.ROOT,
+                "%s: тактов %d (пропущено %d), такт p50=%.2f p99=%.2f max=%.2f мс, " +
+                        "фазы p99: ввод=%.2f симуляция=%.2f кодирование=%.2f отправка=%.2f мс, " +
+                        "игроков %d, команд в очереди %d (ошибок %d), кадров в очередях %d, " +
+                        "вход %.1f КБ/с (%.0f пак/с), выход %.1f КБ/с (%.0f пак/с)",
+                label(), intervalTicks.getCount(), skipped - lastSkippedTicks,
+                millis(intervalTicks.getValueAtPercentile(50)),
+                millis(intervalTicks.getValueAtPercentile(99)),
+                millis(intervalTicks.getMax()),
+                millis(intervalPhases[Phase.INPUT_DRAIN.ordinal()].getValueAtPercentile(99)),
+                millis(intervalPhases[Phase.SIMULATION.ordinal()].getValueAtPercentile(99)),
+                millis(intervalPhases[Phase.ENCODE.ordinal()].getValueAtPercentile(99)),
+                millis(intervalPhases[Phase.SEND.ordinal()].getValueAtPercentile(99)),
+                getPlayerCount(), pendingCommands, failed - lastFailedCommands, getTotalQueueDepth(),
+                (read - lastBytesRead) / 1024.0 / seconds, (packetsIn - lastPacketsRead) / seconds,
+                (written - lastBytesWritten) / 1024.0 / seconds, (packetsOut - lastPacketsWritten) / seconds);
+        intervalTicks.reset();
+        for (LatencyHistogram histogram : intervalPhases) {
+            histogram.reset();
+        }
+        lastLogNanos = now;
+        lastBytesRead = read;
+        lastBytesWritten = written;
+        lastPacketsRead = packetsIn;
+        lastPacketsWritten = packetsOut;
+        lastSkippedTicks = skipped;
+        lastFailedCommands = failed;
+        return report;
+    }
+
+    @Override public long getTickCount() { return tickDuration.getCount(); }
+    @Override public long getSkippedTicks() { return skippedTicks; }
+    @Override public double getTickPeriodMillis() { return millis(tickPeriodNanos); }
+    @Override public double getTickMeanMillis() { return tickDuration.getMean() / 1_000_000.0; }
+    @Override public double getTickP50Millis() { return millis(tickDuration.getValueAtPercentile(50)); }
+    @Override public double getTickP99Millis() { return millis(tickDuration.getValueAtPercentile(99)); }
+    @Override public double getTickMaxMillis() { return millis(tickDuration.getMax()); }
+    @Override public double getTickJitterP99Millis() { return millis(tickJitter.getValueAtPercentile(99)); }
+    @Override public double getInputDrainP99Millis() { return phaseP99(Phase.INPUT_DRAIN); }
+    @Override public double getSimulationP99Millis() { return phaseP99(Phase.SIMULATION); }
+    @Override public double getEncodeP99Millis() { return phaseP99(Phase.ENCODE); }
+    @Override public double getSendP99Millis() { return phaseP99(Phase.SEND); }
+    @Override public int getPendingCommands() { return pendingCommands; }
+    @Override public long getFailedCommands() { return failedCommands; }
+    @Override public int getPlayerCount() { return sessions.size(); }
+    @Override public long getBytesRead() { return bytesRead.sum(); }
+    @Override public long getBytesWritten() { return bytesWritten.sum(); }
+    @Override public long getPacketsRead() { return packetsRead.sum(); }
+    @Override public long getPacketsWritten() { return packetsWritten.sum(); }
+
+    @Override
+    public int getTotalQueueDepth() {
+        int depth = 0;
+        for (PlayerSession session : sessions) {
+            depth += session.getQueueDepth();
+        }
+        return depth;
+    }
+
+    @Override
+    public void resetStatistics() {
+        tickDuration.reset();
+        tickJitter.reset();
+        for (LatencyHistogram histogram : phases) {
+            histogram.reset();
+        }
+    }
+
+    public LatencyHistogram getTickDuration() { return tickDuration; }
+    public LatencyHistogram getTickJitter() { return tickJitter; }
+    public LatencyHistogram getPhase(Phase phase) { return phases[phase.ordinal()]; }
+
+    private double phaseP99(Phase phase) {
+        return millis(phases[phase.ordinal()].getValueAtPercentile(99));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private String label() {
+        return roomId < 0 ? "Сервер " + port : "Комната " + roomId + " (порт " + port + ")";
+    }
+
+    private String scope() {
+        return roomId < 0 ? "port=" + port : "port=" + port + ",room=" + roomId;
+    }
+
+    private ObjectName serverName() {
+        return name("type=Server," + scope());
+    }
+
+    private ObjectName sessionName(PlayerSession session) {
+        return name("type=Session," + scope() + ",id=" + session.getPlayerId());
+    }
+
+    private static ObjectName name(String properties) {
+        try {
+            return new ObjectName(DOMAIN + ":" + properties);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static <T> void register(ObjectName name, T implementation, Class<T> type) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(implementation, type, false), name);
+        } catch (JMException e) {
+            System.err.println("Не удалось зарегистрировать MBean " + name + ": " + e.getMessage());
+        }
+    }
+
+    private static void unregister(ObjectName name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+        }
+    }
+}
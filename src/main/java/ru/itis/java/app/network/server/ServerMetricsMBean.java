@@ -0,0 +1,25 @@
+package ru.itis.java.app.network.server;
+
+public interface ServerMetricsMBean {
+    long getTickCount();
+    long getSkippedTicks();
+    double getTickPeriodMillis();
+    double getTickMeanMillis();
+    double getTickP50Millis();
+    double getTickP99Millis();
+    double getTickMaxMillis();
+    double getTickJitterP99Millis();
+    double getInputDrainP99Millis();
+    double getSimulationP99Millis();
+    double getEncodeP99Millis();
+    double getSendP99Millis();
+    int getPendingCommands();
+    long getFailedCommands();
+    int getPlayerCount();
+    int getTotalQueueDepth();
+    long getBytesRead();
+    long getBytesWritten();
+    long getPacketsRead();
+    long getPacketsWritten();
+    void resetStatistics();
+}
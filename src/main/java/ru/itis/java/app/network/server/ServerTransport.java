@@ -0,0 +1,14 @@
+package ru.itis.java.app.network.server;
+
+public enum ServerTransport {
+    BLOCKING,
+    NIO;
+
+    public static ServerTransport fromString(String value) {
+        if (value == null) return BLOCKING;
+        switch (value.trim().toLowerCase()) {
+            case "nio": return NIO;
+            default: return BLOCKING;
+        }
+    }
+}
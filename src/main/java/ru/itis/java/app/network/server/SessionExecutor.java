@@ -0,0 +1,52 @@
+package ru.itis.java.app.network.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public enum SessionExecutor {
+    CACHED,
+    VIRTUAL;
+
+    public static SessionExecutor fromString(String value) {
+        if (value == null) return CACHED;
+        switch (value.trim().toLowerCase()) {
+            case "virtual": return VIRTUAL;
+            default: return CACHED;
+        }
+    }
+
+    public ExecutorService create(String namePrefix) {
+        if (this == VIRTUAL) {
+            ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+            System.err.println("Виртуальные потоки недоступны в Java " + Runtime.version().feature()
+                    + ", используется кэшированный пул потоков");
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, namePrefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static boolean isVirtualThreadsAvailable() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isVirtualThreadsAvailable()) {
+            return null;
+        }
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
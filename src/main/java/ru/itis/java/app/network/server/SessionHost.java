@@ -0,0 +1,9 @@
+package ru.itis.java.app.network.server;
+
+import java.io.IOException;
+
+interface SessionHost {
+    PlayerSession openSession(SocketGameServer.SessionFactory factory) throws IOException;
+
+    void closeSession(PlayerSession session);
+}
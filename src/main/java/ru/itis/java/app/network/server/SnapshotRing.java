@@ -0,0 +1,45 @@
+package ru.itis.java.app.network.server;
+
+import ru.itis.java.app.network.protocol.SnapshotBuffer;
+
+public class SnapshotRing {
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final int[] sequences;
+    private final SnapshotBuffer[] snapshots;
+
+    public SnapshotRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SnapshotRing(int capacity) {
+        this.sequences = new int[capacity];
+        this.snapshots = new SnapshotBuffer[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequences[i] = -1;
+            snapshots[i] = new SnapshotBuffer();
+        }
+    }
+
+    public synchronized SnapshotBuffer acquire(int seq) {
+        int index = seq % sequences.length;
+        sequences[index] = seq;
+        snapshots[index].clear();
+        return snapshots[index];
+    }
+
+    public synchronized SnapshotBuffer get(int seq) {
+        if (seq < 0) {
+            return null;
+        }
+        int index = seq % sequences.length;
+        return sequences[index] == seq ? snapshots[index] : null;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = -1;
+            snapshots[i].clear();
+        }
+    }
+}
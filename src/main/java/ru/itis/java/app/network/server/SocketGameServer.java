@@ -3,20 +3,48 @@ package ru.itis.java.app.network.server;
 import ru.itis.java.app.entity.PlayerStats;
 import ru.itis.java.app.entity.LevelSystem;
 import ru.itis.java.app.network.protocol.*;
+import ru.itis.java.app.tiles.TileCollisionMap;
 import java.io.*;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.*;
 import java.util.concurrent.*;
 
-public class SocketGameServer {
+public class SocketGameServer implements SessionHost {
+    private static final int ITEM_PICKUP_RANGE = 3 * 48;
+    private static final int DEFAULT_IO_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final long INPUT_BUDGET_CAP_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
     private final int PORT;
-    private ServerSocket serverSocket;
+    private final int roomId;
+    private final int maxPlayers = Math.min(GameProtocol.MAX_PLAYERS,
+            Integer.getInteger("pleasure.server.maxPlayers", GameProtocol.MAX_PLAYERS));
+    private final ServerTransport transport;
+    private final SessionExecutor sessionExecutor;
+    private ServerSocketChannel serverChannel;
     private ExecutorService threadPool;
-    private Map<Integer, PlayerSession> sessions = new ConcurrentHashMap<>();
-    private Map<Integer, PlayerState> playerStates = new ConcurrentHashMap<>();
-    private Map<Integer, ItemState> itemStates = new ConcurrentHashMap<>();
-    private int nextPlayerId = 1;
-    private PacketEncoder encoder = new PacketEncoder();
+    private NioServerTransport nioTransport;
+    private final IdRegistry<PlayerSession> sessions = new IdRegistry<>();
+    private final IdRegistry<PlayerState> playerStates = new IdRegistry<>();
+    private final IdRegistry<ItemState> itemStates = new IdRegistry<>();
+    private final InterestManager interestManager = InterestManager.fromProperties();
+    private final SpatialGrid playerGrid = new SpatialGrid(GameProtocol.MAX_X + 48, GameProtocol.MAX_Y + 48);
+    private final SpatialGrid itemGrid = new SpatialGrid(GameProtocol.MAX_X + 48, GameProtocol.MAX_Y + 48);
+    private final TickLoop tickLoop;
+    private final MovementSimulator movement = new MovementSimulator(TileCollisionMap.load());
+    private final ServerMetrics metrics;
+    private int snapshotSeq = 0;
+    private final SnapshotBuffer snapshotBuffer = new SnapshotBuffer(GameProtocol.MAX_PLAYERS);
+    private final PacketEncoder[] encoders = {
+            new PacketEncoder(GameProtocol.PROTOCOL_V1),
+            new PacketEncoder(GameProtocol.PROTOCOL_V2)
+    };
+    private final FramePool framePool = new FramePool();
+    private final boolean bundling = Boolean.parseBoolean(System.getProperty("pleasure.server.bundle", "true"));
+    private final boolean legacyPositions = Boolean.getBoolean("pleasure.server.legacyPositions");
+    private final List<PlayerSession> bundledSessions = new ArrayList<>();
+    private int[] gridScratch = new int[0];
     private volatile boolean running = true;
 
     private static class Rectangle {
@@ -30,90 +58,171 @@ public class SocketGameServer {
         }
 
         boolean intersects(Rectangle other) {
-            return x < other.x + other.width && x + width > other.x &&
-                    y < other.y + other.height && y + height > other.y;
+            return intersects(other.x, other.y, other.width, other.height);
+        }
+
+        boolean intersects(int otherX, int otherY, int otherWidth, int otherHeight) {
+            return x < otherX + otherWidth && x + width > otherX &&
+                    y < otherY + otherHeight && y + height > otherY;
         }
     }
 
-    public SocketGameServer(int port) {
+    interface SessionFactory {
+        PlayerSession create(PlayerState state) throws IOException;
+    }
+
+    public SocketGameServer(int port, ServerTransport transport, SessionExecutor sessionExecutor) {
+        this(port, -1, transport, sessionExecutor, null);
+    }
+
+    SocketGameServer(int port, int roomId, ScheduledExecutorService tickScheduler) {
+        this(port, roomId, ServerTransport.NIO, SessionExecutor.CACHED, tickScheduler);
+    }
+
+    private SocketGameServer(int port, int roomId, ServerTransport transport, SessionExecutor sessionExecutor,
+                             ScheduledExecutorService tickScheduler) {
         this.PORT = port;
+        this.roomId = roomId;
+        this.transport = transport;
+        this.sessionExecutor = sessionExecutor;
+        int tickRate = Integer.getInteger("pleasure.server.tickRate", TickLoop.DEFAULT_TICK_RATE);
+        this.metrics = new ServerMetrics(port, roomId, tickRate, sessions);
+        this.tickLoop = tickScheduler != null
+                ? new TickLoop(tickScheduler, tickRate, metrics, this::tick)
+                : new TickLoop("tick-" + port, tickRate, metrics, this::tick);
         initializeItems();
     }
 
+    public SocketGameServer(int port, ServerTransport transport) {
+        this(port, transport, SessionExecutor.CACHED);
+    }
+
+    public SocketGameServer(int port) {
+        this(port,
+                ServerTransport.fromString(System.getProperty("pleasure.server.transport")),
+                SessionExecutor.fromString(System.getProperty("pleasure.server.executor")));
+    }
+
     public SocketGameServer() {
         this(1234);
     }
 
+    void movePlayer(PlayerState state, int x, int y) {
+        state.setX(x);
+        state.setY(y);
+        playerGrid.update(state.getId(), x, y);
+    }
+
+    void respawnItems() {
+        for (ItemState item : itemStates) {
+            if (item.isCollected()) {
+                item.setCollected(false);
+                itemGrid.update(item.getId(), item.getX(), item.getY());
+            }
+        }
+    }
+
     private void initializeItems() {
         itemStates.put(1, new ItemState(1, "Sword", 24 * 48, 8 * 48, 100));
         itemStates.put(2, new ItemState(2, "Sword", 24 * 48, 10 * 48, 100));
         itemStates.put(3, new ItemState(3, "Key", 20 * 48, 15 * 48, 25));
         itemStates.put(4, new ItemState(4, "Door", 25 * 48, 15 * 48, 50));
         itemStates.put(5, new ItemState(5, "Shield", 30 * 48, 10 * 48, 100));
+        for (ItemState item : itemStates) {
+            itemGrid.update(item.getId(), item.getX(), item.getY());
+        }
     }
 
-    private PlayerSession createPlayerSession(Socket socket, PlayerState state) throws IOException {
-        PlayerSession session = new PlayerSession(socket, state);
-        byte[] handshakeData = encoder.encodeHandshake(state.getId(), state.getStats());
-        session.getRawOut().write(handshakeData);
-        session.getRawOut().flush();
-        sendWorldState(session);
-        sendInitialItems(session);
+    // Tick thread only: player states, the grid and the session table have a single writer.
+    private void join(PlayerSession session) throws IOException {
+        if (!session.isConnected()) {
+            return;
+        }
+        PlayerState state;
+        try {
+            state = createPlayerState();
+        } catch (IOException e) {
+            session.disconnect();
+            throw e;
+        }
+        session.assign(state);
+        session.setMetrics(metrics);
+        if (bundling) {
+            session.enableBundling(framePool, encoders[GameProtocol.PROTOCOL_V2 - 1]);
+        }
+        try {
+            send(session, frame((encoder, out) -> encoder.encodeHandshake(out, state.getId(), state.getStats())), false);
+            sendWorldState(session);
+            sendInitialItems(session);
+        } catch (IOException e) {
+            session.disconnect();
+            playerStates.remove(state.getId());
+            playerGrid.remove(state.getId());
+            throw e;
+        }
         broadcastPlayerJoin(state.getId(), state.getX(), state.getY(), state.getDirection(), state.getStats());
-        return session;
+        sessions.put(state.getId(), session);
+        metrics.registerSession(session);
     }
 
     private void sendWorldState(PlayerSession session) throws IOException {
-        List<GamePacket.PlayerData> snapshot = new ArrayList<>();
-        for (PlayerState ps : playerStates.values()) {
-            GamePacket.PlayerData data = new GamePacket.PlayerData();
-            data.setId(ps.getId());
-            data.setX(ps.getX());
-            data.setY(ps.getY());
-            data.setDirection(GameProtocol.directionToByte(ps.getDirection()));
-            if (ps.isDead()) {
-                data.setHealth(0);
-            } else {
-                data.setHealth(ps.getStats().getHealth());
-            }
-            data.setMaxHealth(ps.getStats().getMaxHealth());
-            data.setLevel(ps.getStats().getLevel());
-            data.setDamage(ps.getStats().getDamage());
-            data.setExperience(ps.getStats().getExperience());
-            data.setExperienceToNextLevel(ps.getStats().getExperienceToNextLevel());
-            data.setSpriteNum(ps.getLastSpriteNum());
-            data.setDead(ps.isDead());
-            snapshot.add(data);
+        SnapshotBuffer snapshot = buildSnapshot(new SnapshotBuffer(playerStates.size()));
+        send(session, frame(GameProtocol.maxEscapedSize(GameProtocol.worldStateSize(snapshot.size())),
+                (encoder, out) -> encoder.encodeWorldState(out, -1, snapshot)), true);
+    }
+
+    SnapshotBuffer buildSnapshot() {
+        return buildSnapshot(snapshotBuffer);
+    }
+
+    private SnapshotBuffer buildSnapshot(SnapshotBuffer snapshot) {
+        snapshot.clear();
+        for (PlayerState state : playerStates) {
+            PlayerStats stats = state.getStats();
+            boolean dead = state.isDead();
+            snapshot.add(state.getId(), state.getX(), state.getY(),
+                    GameProtocol.directionToByte(state.getDirection()),
+                    dead ? 0 : stats.getHealth(), stats.getMaxHealth(), stats.getLevel(), stats.getDamage(),
+                    stats.getExperience(), stats.getExperienceToNextLevel(), state.getLastSpriteNum(), dead);
         }
-        byte[] worldData = encoder.encodeWorldState(snapshot);
-        session.sendRaw(worldData);
+        snapshot.sortById();
+        return snapshot;
     }
 
     private void sendInitialItems(PlayerSession session) throws IOException {
-        for (ItemState item : itemStates.values()) {
+        for (ItemState item : itemStates) {
             if (!item.isCollected()) {
-                byte[] itemPacket = encoder.encodeItemPickup(
+                send(session, frame((encoder, out) -> encoder.encodeItemPickup(
+                        out,
                         0,
                         item.getId(),
                         item.getType(),
                         item.getX(),
                         item.getY(),
                         item.getExperienceReward()
-                );
-                session.sendRaw(itemPacket);
+                )), false);
             }
         }
     }
 
     public void start() {
         try {
-            serverSocket = new ServerSocket(PORT);
-            System.out.println("Сервер запущен на порту: " + PORT);
-            threadPool = Executors.newCachedThreadPool();
-            new Thread(this::snapshotBroadcastLoop).start();
+            if (transport == ServerTransport.NIO) {
+                nioTransport = new NioServerTransport(this, PORT, DEFAULT_IO_THREADS);
+                System.out.println("Сервер запущен на порту: " + PORT + " (NIO, потоков ввода-вывода: " + DEFAULT_IO_THREADS + ")");
+                startSimulation();
+                nioTransport.start();
+                return;
+            }
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(PORT));
+            System.out.println("Сервер запущен на порту: " + PORT + " (сессии: " + sessionExecutor + ")");
+            threadPool = sessionExecutor.create("session-" + PORT);
+            startSimulation();
             while (running) {
-                Socket clientSocket = serverSocket.accept();
-                threadPool.execute(() -> handleClient(clientSocket));
+                SocketChannel clientChannel = serverChannel.accept();
+                clientChannel.socket().setTcpNoDelay(true);
+                threadPool.execute(() -> handleClient(clientChannel));
             }
         } catch (IOException e) {
             if (running) {
@@ -122,90 +231,232 @@ public class SocketGameServer {
         }
     }
 
-    private void handleClient(Socket socket) {
-        PlayerState state = null;
+    void startHosted() {
+        startSimulation();
+    }
+
+    private void startSimulation() {
+        tickLoop.start();
+        metrics.register();
+        long logInterval = Integer.getInteger("pleasure.server.metricsInterval", ServerMetrics.DEFAULT_LOG_INTERVAL_SECONDS);
+        tickLoop.scheduleAtFixedRate(() -> {
+            if (roomId < 0 || !sessions.isEmpty()) {
+                System.out.println(metrics.intervalReport());
+            }
+        }, logInterval, TimeUnit.SECONDS);
+    }
+
+    private PlayerState createPlayerState() throws IOException {
+        if (sessions.size() >= maxPlayers) {
+            System.out.println("Подключение отклонено: достигнут предел игроков (" + maxPlayers + ")");
+            throw new IOException("Server is full");
+        }
+        PlayerState state = playerStates.add(PlayerState::new);
+        if (state == null) {
+            throw new IOException("No free player ids");
+        }
+        playerGrid.update(state.getId(), state.getX(), state.getY());
+        return state;
+    }
+
+    @Override
+    public PlayerSession openSession(SessionFactory factory) throws IOException {
+        PlayerSession session = factory.create(null);
+        attachSession(session);
+        return session;
+    }
+
+    void attachSession(PlayerSession session) {
+        session.setHost(this);
+        session.setPacketHandler(packet -> handleInbound(session, packet));
+        tickLoop.submit(() -> join(session));
+    }
+
+    @Override
+    public void closeSession(PlayerSession session) {
+        session.disconnect();
+        tickLoop.submit(() -> removePlayer(session));
+    }
+
+    private void removePlayer(PlayerSession session) {
+        PlayerState state = session.getState();
+        if (state != null && sessions.remove(state.getId(), session)) {
+            metrics.unregisterSession(session);
+            playerStates.remove(state.getId());
+            playerGrid.remove(state.getId());
+            for (PlayerSession other : sessions) {
+                other.getVisiblePlayers().clear(state.getId());
+            }
+            broadcastPlayerLeave(state.getId());
+        }
+    }
+
+    private void handleClient(SocketChannel channel) {
         PlayerSession session = null;
         try {
-            synchronized (this) {
-                int playerId = nextPlayerId++;
-                state = new PlayerState(playerId);
-                playerStates.put(Integer.valueOf(playerId), state);
-                session = createPlayerSession(socket, state);
-                sessions.put(Integer.valueOf(playerId), session);
-            }
-            PacketDecoder decoder = new PacketDecoder();
-            byte[] buffer = new byte[4096];
+            session = openSession(state -> new PlayerSession(channel, state));
+            threadPool.execute(session::runWriter);
             while (session.isConnected()) {
-                int bytesRead = session.getRawIn().read(buffer);
-                if (bytesRead == -1) break;
-                session.getMessageBuffer().write(buffer, 0, bytesRead);
-                byte[] receivedData = session.getMessageBuffer().toByteArray();
-                PacketDecoder.DecodeResult result = decoder.decode(receivedData, receivedData.length);
-                for (GamePacket packet : result.packets()) {
-                    processPacket(session, packet);
-                }
-                if (result.bytesProcessed() > 0) {
-                    int remaining = receivedData.length - result.bytesProcessed();
-                    if (remaining > 0) {
-                        byte[] newBuffer = new byte[remaining];
-                        System.arraycopy(receivedData, result.bytesProcessed(), newBuffer, 0, remaining);
-                        session.getMessageBuffer().reset();
-                        session.getMessageBuffer().write(newBuffer);
-                    } else {
-                        session.getMessageBuffer().reset();
-                    }
-                }
+                if (session.readPackets() == -1) break;
             }
         } catch (IOException e) {
-        }  finally {
+            if (session == null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        } finally {
             if (session != null) {
-                session.disconnect();
-                if (state != null) {
-                    sessions.remove(state.getId());
-                    playerStates.remove(state.getId());
-                    broadcastPlayerLeave(state.getId());
+                closeSession(session);
+            }
+        }
+    }
+
+    private VersionedFrame frame(VersionedFrame.Writer writer) {
+        return frame(FramePool.SMALL_FRAME_SIZE, writer);
+    }
+
+    private VersionedFrame frame(int maxFrameSize, VersionedFrame.Writer writer) {
+        return new VersionedFrame(framePool, encoders, maxFrameSize, writer);
+    }
+
+    private void send(PlayerSession session, VersionedFrame frame, boolean droppable) throws IOException {
+        try {
+            deliver(session, frame, droppable);
+        } finally {
+            frame.release();
+        }
+    }
+
+    // Everything a session is sent during one tick leaves as a single bundle frame when the tick ends.
+    private void deliver(PlayerSession session, VersionedFrame frame, boolean droppable) throws IOException {
+        if (tickLoop.inTick()) {
+            int staged = session.stage(frame, droppable);
+            if (staged > 0) {
+                if (staged == 1) {
+                    bundledSessions.add(session);
                 }
+                return;
             }
         }
+        session.send(frame, droppable);
     }
 
-    private void broadcastPlayerJoin(int playerId, int x, int y, String direction, PlayerStats stats) {
+    private void flushBundles() {
+        for (int i = 0; i < bundledSessions.size(); i++) {
+            try {
+                bundledSessions.get(i).flushBundle();
+            } catch (IOException e) {
+            }
+        }
+        bundledSessions.clear();
+    }
+
+    private void broadcast(VersionedFrame frame, boolean droppable, int excludePlayerId) {
         try {
-            byte[] joinPacket = encoder.encodePlayerJoin(playerId, x, y, direction, stats);
-            for (PlayerSession s : sessions.values()) {
-                if (s.getState().getId() != playerId) {
-                    s.sendRaw(joinPacket);
+            for (PlayerSession session : sessions) {
+                if (session.isConnected() && session.getState().getId() != excludePlayerId) {
+                    try {
+                        deliver(session, frame, droppable);
+                    } catch (IOException e) {
+                    }
                 }
             }
-        } catch (IOException e) {
+        } finally {
+            frame.release();
         }
     }
 
-    private void broadcastPlayerLeave(int playerId) {
+    private void broadcastVisible(VersionedFrame frame, boolean droppable, int subjectId, boolean includeSubject) {
+        PlayerState subject = playerStates.get(subjectId);
         try {
-            byte[] leavePacket = encoder.encodePlayerLeave(playerId);
-            for (PlayerSession s : sessions.values()) {
-                s.sendRaw(leavePacket);
+            for (PlayerSession session : sessions) {
+                if (!session.isConnected()) {
+                    continue;
+                }
+                PlayerState viewer = session.getState();
+                if (viewer.getId() == subjectId) {
+                    if (!includeSubject) {
+                        continue;
+                    }
+                } else if (subject != null && !interestManager.canSee(viewer, subject, session.getVisiblePlayers())) {
+                    continue;
+                }
+                try {
+                    deliver(session, frame, droppable);
+                } catch (IOException e) {
+                }
             }
-        } catch (IOException e) {
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void broadcastPlayerJoin(int playerId, int x, int y, String direction, PlayerStats stats) {
+        byte directionByte = GameProtocol.directionToByte(direction);
+        broadcastVisible(frame((encoder, out) -> encoder.encodePlayerJoin(out, playerId, x, y, directionByte, stats)), false, playerId, false);
+    }
+
+    private void broadcastPlayerLeave(int playerId) {
+        broadcast(frame((encoder, out) -> encoder.encodePlayerLeave(out, playerId)), false, 0);
+    }
+
+    private void handleInbound(PlayerSession session, GamePacket packet) throws IOException {
+        switch (packet.getType()) {
+            case GameProtocol.TYPE_HANDSHAKE:
+                handleHandshake(session, packet);
+                break;
+            case GameProtocol.TYPE_SNAPSHOT_ACK:
+                session.ackSnapshot(packet.getSnapshotSeq());
+                break;
+            default:
+                tickLoop.submit(() -> processPacket(session, packet));
         }
     }
 
     private void processPacket(PlayerSession session, GamePacket packet) throws IOException {
         PlayerState state = session.getState();
-        if (state.isDead() && packet.getType() == GameProtocol.TYPE_PLAYER_UPDATE) {
+        if (!session.isConnected() || state == null) {
+            return;
+        }
+        if (state.isDead() && (packet.getType() == GameProtocol.TYPE_PLAYER_UPDATE
+                || packet.getType() == GameProtocol.TYPE_PLAYER_INPUT)) {
             return;
         }
         switch (packet.getType()) {
+            case GameProtocol.TYPE_PLAYER_INPUT:
+                handlePlayerInput(state, packet);
+                break;
             case GameProtocol.TYPE_PLAYER_UPDATE:
-                if (packet.hasFlag(GameProtocol.FLAG_POSITION)) {
+                boolean sequenced = packet.hasFlag(GameProtocol.FLAG_INPUT_SEQ);
+                if (sequenced && state.getLastInputSeq() >= 0
+                        && !GameProtocol.isNewerSequence(packet.getInputSeq(), state.getLastInputSeq())) {
+                    break;
+                }
+                if (packet.hasFlag(GameProtocol.FLAG_POSITION) && acceptsPositions(session, state)) {
                     int x = packet.getX();
                     int y = packet.getY();
-                    if (GameProtocol.validateCoordinates(x, y)) {
-                        state.setX(x);
-                        state.setY(y);
+                    int newX = x;
+                    int newY = y;
+                    if (sequenced && state.getLastInputX() >= 0) {
+                        // Sequenced clients send a free-running 16-bit input position; only the movement since the
+                        // previous input is applied so server-side pushes and respawns are not overwritten.
+                        newX = state.getX() + (short) (x - state.getLastInputX());
+                        newY = state.getY() + (short) (y - state.getLastInputY());
+                        newX = Math.max(GameProtocol.MIN_X, Math.min(newX, GameProtocol.MAX_X));
+                        newY = Math.max(GameProtocol.MIN_Y, Math.min(newY, GameProtocol.MAX_Y));
+                    }
+                    if (GameProtocol.validateCoordinates(newX, newY) && spendMoveBudget(state, newX, newY)) {
+                        movePlayer(state, newX, newY);
+                    }
+                    if (sequenced) {
+                        state.setLastInput(x, y);
                     }
                 }
+                if (sequenced) {
+                    state.setLastInputSeq(packet.getInputSeq());
+                }
                 if (packet.hasFlag(GameProtocol.FLAG_DIRECTION)) {
                     state.setDirection(GameProtocol.byteToDirection(packet.getDirection()));
                 }
@@ -226,24 +477,89 @@ public class SocketGameServer {
         }
     }
 
-    private void broadcastPlayerUpdate(int playerId, int x, int y, String direction, byte spriteNum) {
-        try {
-            byte[] updatePacket = encoder.encodePlayerUpdate(playerId, x, y, direction, spriteNum);
-            for (PlayerSession s : sessions.values()) {
-                if (s.getState().getId() != playerId) {
-                    s.sendRaw(updatePacket);
-                }
+    private void handlePlayerInput(PlayerState state, GamePacket packet) {
+        state.setInputCommands(true);
+        int seq = packet.getInputSeq();
+        boolean applied = false;
+        for (int i = 0; i < packet.getInputCount(); i++, seq = (seq + 1) & GameProtocol.SEQUENCE_MASK) {
+            if (state.getLastInputSeq() >= 0 && !GameProtocol.isNewerSequence(seq, state.getLastInputSeq())) {
+                continue;
             }
-        } catch (IOException e) {
+            state.setLastInputSeq(seq);
+            applied = true;
+            int mask = packet.getInputMask(i);
+            if ((mask & GameProtocol.INPUT_MOVE_MASK) != 0 && !state.spendInputBudget(MovementSimulator.STEP_NANOS)) {
+                continue;
+            }
+            movement.step(state, mask, itemStates);
+        }
+        if (!applied) {
+            return;
+        }
+        movePlayer(state, state.getX(), state.getY());
+        state.setLastUpdateTime(System.currentTimeMillis());
+        broadcastPlayerUpdate(state.getId(), state.getX(), state.getY(), state.getDirection(), state.getLastSpriteNum());
+    }
+
+    // Positions are authoritative on the server: only v1 clients that never send inputs may still move
+    // themselves, and only when the server is started with pleasure.server.legacyPositions=true.
+    private boolean acceptsPositions(PlayerSession session, PlayerState state) {
+        return legacyPositions && session.getProtocolVersion() < GameProtocol.PROTOCOL_V2 && !state.usesInputCommands();
+    }
+
+    // A client position may only be as far away as PLAYER_SPEED per frame of movement budget allows;
+    // a longer jump is dropped and the client is reconciled back to the server position.
+    private boolean spendMoveBudget(PlayerState state, int x, int y) {
+        int distance = Math.abs(x - state.getX()) + Math.abs(y - state.getY());
+        int frames = (distance + GameProtocol.PLAYER_SPEED - 1) / GameProtocol.PLAYER_SPEED;
+        return frames == 0 || state.spendInputBudget(frames * MovementSimulator.STEP_NANOS);
+    }
+
+    private void handleHandshake(PlayerSession session, GamePacket packet) throws IOException {
+        int requested = Math.min(packet.getProtocolVersion(), GameProtocol.PROTOCOL_VERSION);
+        if (requested <= session.getProtocolVersion()) {
+            return;
+        }
+        PlayerState state = session.getState();
+        if (state == null) {
+            return;
+        }
+        VersionedFrame ack = frame((encoder, out) -> encoder.encodeHandshake(out, state.getId(), state.getStats(), requested));
+        try {
+            session.upgradeProtocol(requested, ack);
+        } finally {
+            ack.release();
         }
+        System.out.println("Игрок " + state.getId() + " перешёл на протокол v" + requested);
     }
 
-    private void handleItemPickup(PlayerState player, GamePacket packet) throws IOException {
+    private void broadcastPlayerUpdate(int playerId, int x, int y, String direction, byte spriteNum) {
+        if (!GameProtocol.validateCoordinates(x, y)) {
+            return;
+        }
+        byte flags = GameProtocol.FLAG_POSITION;
+        if (direction != null) {
+            flags |= GameProtocol.FLAG_DIRECTION;
+        }
+        if (spriteNum > 0) {
+            flags |= GameProtocol.FLAG_SPRITE_NUM;
+        }
+        byte updateFlags = flags;
+        byte directionByte = GameProtocol.directionToByte(direction);
+        broadcastVisible(frame((encoder, out) ->
+                encoder.encodePlayerUpdate(out, updateFlags, playerId, x, y, directionByte, spriteNum)), true, playerId, false);
+    }
+
+    void handleItemPickup(PlayerState player, GamePacket packet) throws IOException {
         int itemId = packet.getItemId();
         String itemType = packet.getItemType();
         ItemState item = itemStates.get(itemId);
 
         if (item != null && !item.isCollected()) {
+            if (!isItemInReach(player, itemId)) {
+                return;
+            }
+
             boolean canPickup = true;
 
             if (item.getType().equals("Door") && player.getKeys() <= 0) {
@@ -257,6 +573,7 @@ public class SocketGameServer {
             }
 
             item.setCollected(true);
+            itemGrid.remove(itemId);
 
             switch (item.getType()) {
                 case "Sword":
@@ -280,28 +597,27 @@ public class SocketGameServer {
 
             player.getStats().addExperienceWithLevelCheck(item.getExperienceReward());
 
-            byte[] itemRemovePacket = encoder.encodeItemRemove(itemId);
+            VersionedFrame itemRemovePacket = frame((encoder, out) -> encoder.encodeItemRemove(out, itemId));
 
-            byte[] itemPickupPacket = encoder.encodeItemPickup(
+            VersionedFrame itemPickupPacket = frame((encoder, out) -> encoder.encodeItemPickup(out,
                     player.getId(), itemId, item.getType(), item.getX(), item.getY(), item.getExperienceReward()
-            );
-
-            byte[] experiencePacket = encoder.encodePlayerExperience(
-                    player.getId(),
-                    player.getStats().getExperience(),
-                    player.getStats().getExperienceToNextLevel(),
-                    player.getStats().getLevel()
-            );
-
-            for (PlayerSession session : sessions.values()) {
-                if (session.isConnected()) {
-                    session.sendRaw(itemRemovePacket);
-
-                    if (session.getState().getId() == player.getId()) {
-                        session.sendRaw(itemPickupPacket);
-                        session.sendRaw(experiencePacket);
-                    }
-                }
+            ));
+
+            int experience = player.getStats().getExperience();
+            int experienceToNextLevel = player.getStats().getExperienceToNextLevel();
+            int level = player.getStats().getLevel();
+            VersionedFrame experiencePacket = frame((encoder, out) -> encoder.encodePlayerExperience(out,
+                    player.getId(), experience, experienceToNextLevel, level
+            ));
+
+            broadcast(itemRemovePacket, false, 0);
+            PlayerSession pickerSession = sessions.get(player.getId());
+            if (pickerSession != null && pickerSession.isConnected()) {
+                send(pickerSession, itemPickupPacket, false);
+                send(pickerSession, experiencePacket, false);
+            } else {
+                itemPickupPacket.release();
+                experiencePacket.release();
             }
 
             System.out.println("Игрок " + player.getId() + " подобрал " + item.getType() +
@@ -309,110 +625,112 @@ public class SocketGameServer {
         }
     }
 
-    private void handleAttack(PlayerState attacker, GamePacket packet) throws IOException {
-        byte[] attackPacket = encoder.encodeAttack(
+    void handleAttack(PlayerState attacker, GamePacket packet) throws IOException {
+        byte attackDirection = GameProtocol.directionToByte(GameProtocol.byteToDirection(packet.getDirection()));
+        int attackerX = attacker.getX();
+        int attackerY = attacker.getY();
+        VersionedFrame attackPacket = frame((encoder, out) -> encoder.encodeAttack(out,
                 attacker.getId(),
-                GameProtocol.byteToDirection(packet.getDirection()),
-                attacker.getX(),
-                attacker.getY()
-        );
-
-        for (PlayerSession session : sessions.values()) {
-            if (session.isConnected() && session.getState() != null) {
-                try {
-                    session.sendRaw(attackPacket);
-                } catch (IOException e) {
-                }
-            }
-        }
-
-        for (PlayerState target : playerStates.values()) {
-            if (target.getId() == attacker.getId() || target.isDead() || !target.getStats().isAlive()) {
+                attackDirection,
+                attackerX,
+                attackerY
+        ));
+
+        broadcastVisible(attackPacket, false, attacker.getId(), true);
+
+        String direction = GameProtocol.byteToDirection(packet.getDirection());
+        Rectangle attackZone = calculateAttackZone(attackerX + 24, attackerY + 24, direction);
+        int[] candidates = gridScratch(playerGrid.size() + 1);
+        int count = playerGrid.queryRect(attackZone.x - 47, attackZone.y - 47,
+                attackZone.x + attackZone.width - 1, attackZone.y + attackZone.height - 1, candidates);
+
+        for (int i = 0; i < count; i++) {
+            PlayerState target = playerStates.get(candidates[i]);
+            if (target == null || target.getId() == attacker.getId() || target.isDead() || !target.getStats().isAlive()) {
                 continue;
             }
 
-            int attackX = attacker.getX() + 24;
-            int attackY = attacker.getY() + 24;
-            Rectangle attackZone = calculateAttackZone(attackX, attackY,
-                    GameProtocol.byteToDirection(packet.getDirection()));
-            Rectangle targetBounds = new Rectangle(target.getX(), target.getY(), 48, 48);
-
-            if (attackZone.intersects(targetBounds)) {
+            if (attackZone.intersects(target.getX(), target.getY(), 48, 48)) {
                 int damage = attacker.getStats().getDamage();
                 target.takeDamage(damage);
 
-                byte[] damagePacket = encoder.encodePlayerDamage(
+                int targetHealth = target.isDead() ? 0 : target.getStats().getHealth();
+                int targetMaxHealth = target.getStats().getMaxHealth();
+                int targetLevel = target.getStats().getLevel();
+                VersionedFrame damagePacket = frame((encoder, out) -> encoder.encodePlayerDamage(out,
                         attacker.getId(),
                         target.getId(),
                         damage,
-                        target.isDead() ? 0 : target.getStats().getHealth(),
-                        target.getStats().getMaxHealth(),
-                        target.getStats().getLevel()
-                );
-
-                for (PlayerSession session : sessions.values()) {
-                    if (session.isConnected() && session.getState() != null) {
-                        try {
-                            session.sendRaw(damagePacket);
-                        } catch (IOException e) {
-                        }
-                    }
-                }
+                        targetHealth,
+                        targetMaxHealth,
+                        targetLevel
+                ));
+
+                broadcast(damagePacket, false, 0);
 
                 if (!target.isAlive()) {
                     attacker.addExperienceForKill(target.getStats().getLevel());
 
-                    byte[] deathPacket = encoder.encodePlayerDeath(target.getId(), attacker.getId());
-                    for (PlayerSession session : sessions.values()) {
-                        if (session.isConnected() && session.getState() != null) {
-                            try {
-                                session.sendRaw(deathPacket);
-                            } catch (IOException e) {
-                            }
-                        }
-                    }
+                    broadcast(frame((encoder, out) -> encoder.encodePlayerDeath(out, target.getId(), attacker.getId())), false, 0);
 
-                    sendWorldStateToAll();
                     handlePlayerDeath(target.getId(), attacker.getId());
 
-                    byte[] experiencePacket = encoder.encodePlayerExperience(
+                    int experience = attacker.getStats().getExperience();
+                    int experienceToNextLevel = attacker.getStats().getExperienceToNextLevel();
+                    int level = attacker.getStats().getLevel();
+                    VersionedFrame experiencePacket = frame((encoder, out) -> encoder.encodePlayerExperience(out,
                             attacker.getId(),
-                            attacker.getStats().getExperience(),
-                            attacker.getStats().getExperienceToNextLevel(),
-                            attacker.getStats().getLevel()
-                    );
-
-                    for (PlayerSession session : sessions.values()) {
-                        if (session.isConnected()) {
-                            session.sendRaw(experiencePacket);
-                        }
-                    }
+                            experience,
+                            experienceToNextLevel,
+                            level
+                    ));
+
+                    broadcast(experiencePacket, false, 0);
                 }
 
-                int[] push = calculatePush(target.getX(), target.getY(), attacker.getX(), attacker.getY(),
-                        GameProtocol.byteToDirection(packet.getDirection()));
-                target.setX(push[0]);
-                target.setY(push[1]);
+                int[] push = calculatePush(target.getX(), target.getY(), attacker.getX(), attacker.getY(), direction);
+                movePlayer(target, push[0], push[1]);
                 target.setLastUpdateTime(System.currentTimeMillis());
 
-                byte[] pushPacket = encoder.encodePlayerHit(
+                VersionedFrame pushPacket = frame((encoder, out) -> encoder.encodePlayerHit(out,
                         attacker.getId(),
                         target.getId(),
                         push[0],
                         push[1]
-                );
+                ));
 
                 PlayerSession targetSession = sessions.get(target.getId());
                 if (targetSession != null) {
                     try {
-                        targetSession.sendRaw(pushPacket);
+                        send(targetSession, pushPacket, false);
                     } catch (IOException e) {
                     }
+                } else {
+                    pushPacket.release();
                 }
             }
         }
     }
 
+    private boolean isItemInReach(PlayerState player, int itemId) {
+        int[] nearby = gridScratch(itemGrid.size() + 1);
+        int count = itemGrid.queryRange(player.getX(), player.getY(), ITEM_PICKUP_RANGE, nearby);
+        for (int i = 0; i < count; i++) {
+            if (nearby[i] == itemId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Tick thread only; grows to the largest grid queried and is reused after that.
+    private int[] gridScratch(int capacity) {
+        if (gridScratch.length < capacity) {
+            gridScratch = new int[capacity];
+        }
+        return gridScratch;
+    }
+
     private void handlePlayerDeath(int deadPlayerId, int killerId) throws IOException {
         PlayerState deadPlayer = playerStates.get(deadPlayerId);
         if (deadPlayer != null) {
@@ -420,20 +738,12 @@ public class SocketGameServer {
         }
         PlayerSession deadSession = sessions.get(deadPlayerId);
         if (deadSession != null) {
-            new Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    try {
-                        if (deadSession.isConnected()) {
-                            deadSession.disconnect();
-                            sessions.remove(deadPlayerId);
-                            playerStates.remove(deadPlayerId);
-                            broadcastPlayerLeave(deadPlayerId);
-                        }
-                    } catch (Exception e) {
-                    }
+            tickLoop.schedule(() -> {
+                if (deadSession.isConnected()) {
+                    deadSession.disconnect();
+                    removePlayer(deadSession);
                 }
-            }, 5000);
+            }, PlayerState.DEATH_DISCONNECT_TIME * tickLoop.getPeriodNanos(), TimeUnit.NANOSECONDS);
         }
     }
 
@@ -481,56 +791,76 @@ public class SocketGameServer {
         }
     }
 
-    private void sendWorldStateToAll() throws IOException {
+    void sendWorldStateToAll() {
         if (playerStates.isEmpty()) return;
-        List<GamePacket.PlayerData> snapshot = new ArrayList<>();
-        for (PlayerState state : playerStates.values()) {
-            GamePacket.PlayerData data = new GamePacket.PlayerData();
-            data.setId(state.getId());
-            data.setX(state.getX());
-            data.setY(state.getY());
-            data.setDirection(GameProtocol.directionToByte(state.getDirection()));
-            if (state.isDead()) {
-                data.setHealth(0);
+        SnapshotBuffer snapshot = buildSnapshot();
+        int seq = snapshotSeq;
+        snapshotSeq = (snapshotSeq + 1) & GameProtocol.SEQUENCE_MASK;
+        long encodeNanos = 0;
+        long sendNanos = 0;
+        for (PlayerSession session : sessions) {
+            if (!session.isConnected()) {
+                continue;
+            }
+            SnapshotRing history = session.getSnapshotHistory();
+            int acked = session.getAckedSnapshot();
+            SnapshotBuffer acknowledged = history.get(acked);
+            SnapshotBuffer view = history.acquire(seq);
+            SnapshotBuffer baseline = acknowledged == view ? null : acknowledged;
+            int inputAck = session.getState().getLastInputSeq();
+            interestManager.filter(session.getState(), snapshot, session.getVisiblePlayers(), playerGrid, view);
+            // Encoded per session: the view, the acked baseline and the input ack all belong to this session.
+            VersionedFrame frame;
+            if (baseline == null) {
+                frame = frame(GameProtocol.maxEscapedSize(GameProtocol.worldStateSize(view.size())),
+                        (encoder, out) -> encoder.encodeWorldState(out, seq, inputAck, view));
             } else {
-                data.setHealth(state.getStats().getHealth());
+                frame = frame(GameProtocol.maxEscapedSize(GameProtocol.worldDeltaSize(view.size(), baseline.size())),
+                        (encoder, out) -> encoder.encodeWorldDelta(out, seq, acked, inputAck, view, baseline));
             }
-            data.setMaxHealth(state.getStats().getMaxHealth());
-            data.setLevel(state.getStats().getLevel());
-            data.setDamage(state.getStats().getDamage());
-            data.setExperience(state.getStats().getExperience());
-            data.setExperienceToNextLevel(state.getStats().getExperienceToNextLevel());
-            data.setSpriteNum(state.getLastSpriteNum());
-            data.setDead(state.isDead());
-            snapshot.add(data);
-        }
-        byte[] worldData = encoder.encodeWorldState(snapshot);
-        for (PlayerSession session : sessions.values()) {
+            long encodeStart = System.nanoTime();
+            frame.forVersion(session.getProtocolVersion());
+            long sendStart = System.nanoTime();
             try {
-                session.sendRaw(worldData);
+                send(session, frame, true);
             } catch (IOException e) {
             }
+            encodeNanos += sendStart - encodeStart;
+            sendNanos += System.nanoTime() - sendStart;
         }
+        metrics.recordPhase(ServerMetrics.Phase.ENCODE, encodeNanos);
+        metrics.recordPhase(ServerMetrics.Phase.SEND, sendNanos);
     }
 
-    private void snapshotBroadcastLoop() {
-        while (running) {
-            try {
-                Thread.sleep(33);
-                for (PlayerState state : playerStates.values()) {
-                    state.update();
-                }
-                sendWorldStateToAll();
-            } catch (Exception e) {
-            }
+    void tick() {
+        long start = System.nanoTime();
+        long inputRefill = tickLoop.getPeriodNanos() + tickLoop.getPeriodNanos() / 20;
+        for (PlayerState state : playerStates) {
+            state.update();
+            state.refillInputBudget(inputRefill, INPUT_BUDGET_CAP_NANOS);
+            playerGrid.update(state.getId(), state.getX(), state.getY());
+        }
+        metrics.recordPhase(ServerMetrics.Phase.SIMULATION, System.nanoTime() - start);
+        try {
+            sendWorldStateToAll();
+        } finally {
+            flushBundles();
         }
     }
 
     public void stop() {
         running = false;
+        tickLoop.stop();
+        metrics.unregister();
+        for (PlayerSession session : sessions) {
+            metrics.unregisterSession(session);
+        }
+        if (nioTransport != null) {
+            nioTransport.stop();
+        }
         try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -540,6 +870,44 @@ public class SocketGameServer {
             threadPool.shutdownNow();
         }
 
-        System.out.println("Сервер на порту " + PORT + " остановлен");
+        if (roomId < 0) {
+            System.out.println("Сервер на порту " + PORT + " остановлен");
+        } else {
+            System.out.println("Комната " + roomId + " на порту " + PORT + " закрыта");
+        }
+    }
+
+    public ServerTransport getTransport() {
+        return transport;
+    }
+
+    public SessionExecutor getSessionExecutor() {
+        return sessionExecutor;
+    }
+
+    void disconnectAll() {
+        for (PlayerSession session : sessions) {
+            closeSession(session);
+        }
+    }
+
+    ItemState getItem(int itemId) {
+        return itemStates.get(itemId);
+    }
+
+    public int getRoomId() {
+        return roomId;
+    }
+
+    public int getPlayerCount() {
+        return sessions.size();
+    }
+
+    public TickLoop getTickLoop() {
+        return tickLoop;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
     }
 }
\ No newline at end of file
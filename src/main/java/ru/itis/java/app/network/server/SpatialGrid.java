@@ -0,0 +1,181 @@
+package ru.itis.java.app.network.server;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+public class SpatialGrid {
+    public static final int DEFAULT_CELL_SIZE = 96;
+
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[][] cells;
+    private final int[] cellCounts;
+    private int[] cellOf = new int[64];
+    private int[] xs = new int[64];
+    private int[] ys = new int[64];
+    private int size = 0;
+
+    public SpatialGrid(int worldWidth, int worldHeight) {
+        this(worldWidth, worldHeight, DEFAULT_CELL_SIZE);
+    }
+
+    public SpatialGrid(int worldWidth, int worldHeight, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (worldWidth + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (worldHeight + cellSize - 1) / cellSize);
+        this.cells = new int[columns * rows][];
+        this.cellCounts = new int[columns * rows];
+        Arrays.fill(cellOf, -1);
+    }
+
+    public synchronized void update(int id, int x, int y) {
+        ensureId(id);
+        int cell = cellIndex(x, y);
+        int previous = cellOf[id];
+        xs[id] = x;
+        ys[id] = y;
+        if (previous == cell) {
+            return;
+        }
+        if (previous >= 0) {
+            removeFromCell(previous, id);
+        } else {
+            size++;
+        }
+        addToCell(cell, id);
+        cellOf[id] = cell;
+    }
+
+    public synchronized void remove(int id) {
+        if (id < 0 || id >= cellOf.length || cellOf[id] < 0) {
+            return;
+        }
+        removeFromCell(cellOf[id], id);
+        cellOf[id] = -1;
+        size--;
+    }
+
+    public synchronized boolean contains(int id) {
+        return id >= 0 && id < cellOf.length && cellOf[id] >= 0;
+    }
+
+    public synchronized int queryRect(int minX, int minY, int maxX, int maxY, int[] result) {
+        int count = 0;
+        int firstColumn = clampColumn(minX);
+        int lastColumn = clampColumn(maxX);
+        int firstRow = clampRow(minY);
+        int lastRow = clampRow(maxY);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                int[] ids = cells[cell];
+                for (int i = 0; i < cellCounts[cell]; i++) {
+                    int id = ids[i];
+                    int x = xs[id];
+                    int y = ys[id];
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                        if (count == result.length) {
+                            return count;
+                        }
+                        result[count++] = id;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    public synchronized int queryRange(int centerX, int centerY, int radius, int[] result) {
+        int count = 0;
+        long radiusSquared = (long) radius * radius;
+        int firstColumn = clampColumn(centerX - radius);
+        int lastColumn = clampColumn(centerX + radius);
+        int firstRow = clampRow(centerY - radius);
+        int lastRow = clampRow(centerY + radius);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                int[] ids = cells[cell];
+                for (int i = 0; i < cellCounts[cell]; i++) {
+                    int id = ids[i];
+                    long dx = xs[id] - centerX;
+                    long dy = ys[id] - centerY;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        if (count == result.length) {
+                            return count;
+                        }
+                        result[count++] = id;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    public void forEachInRange(int centerX, int centerY, int radius, IntConsumer action) {
+        int[] result = new int[size()];
+        int count = queryRange(centerX, centerY, radius, result);
+        for (int i = 0; i < count; i++) {
+            action.accept(result[i]);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    private void ensureId(int id) {
+        if (id < cellOf.length) {
+            return;
+        }
+        int capacity = Math.max(cellOf.length * 2, id + 1);
+        int oldLength = cellOf.length;
+        cellOf = Arrays.copyOf(cellOf, capacity);
+        Arrays.fill(cellOf, oldLength, capacity, -1);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+    }
+
+    private void addToCell(int cell, int id) {
+        int[] ids = cells[cell];
+        int count = cellCounts[cell];
+        if (ids == null) {
+            ids = new int[4];
+            cells[cell] = ids;
+        } else if (count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+            cells[cell] = ids;
+        }
+        ids[count] = id;
+        cellCounts[cell] = count + 1;
+    }
+
+    private void removeFromCell(int cell, int id) {
+        int[] ids = cells[cell];
+        int count = cellCounts[cell];
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                ids[i] = ids[count - 1];
+                cellCounts[cell] = count - 1;
+                return;
+            }
+        }
+    }
+
+    private int cellIndex(int x, int y) {
+        return clampRow(y) * columns + clampColumn(x);
+    }
+
+    private int clampColumn(int x) {
+        return Math.max(0, Math.min(columns - 1, Math.floorDiv(x, cellSize)));
+    }
+
+    private int clampRow(int y) {
+        return Math.max(0, Math.min(rows - 1, Math.floorDiv(y, cellSize)));
+    }
+}
@@ -0,0 +1,146 @@
+package ru.itis.java.app.network.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class TickLoop {
+    public static final int DEFAULT_TICK_RATE = 30;
+    private static final int MAX_COMMANDS_PER_TICK = 4096;
+
+    public interface Command {
+        void execute() throws IOException;
+    }
+
+    private final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final List<ScheduledFuture<?>> periodicTasks = new CopyOnWriteArrayList<>();
+    private final ServerMetrics metrics;
+    private final Runnable tick;
+    private final long periodNanos;
+    private volatile boolean running = false;
+    private volatile Thread tickThread;
+    private long nextTickNanos;
+
+    public TickLoop(String name, int tickRate, ServerMetrics metrics, Runnable tick) {
+        this(Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        }), true, tickRate, metrics, tick);
+    }
+
+    public TickLoop(ScheduledExecutorService scheduler, int tickRate, ServerMetrics metrics, Runnable tick) {
+        this(scheduler, false, tickRate, metrics, tick);
+    }
+
+    private TickLoop(ScheduledExecutorService scheduler, boolean ownsScheduler, int tickRate,
+                     ServerMetrics metrics, Runnable tick) {
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+        this.metrics = metrics;
+        this.tick = tick;
+        this.periodNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, tickRate);
+    }
+
+    public void start() {
+        running = true;
+        scheduler.execute(() -> {
+            nextTickNanos = System.nanoTime() + periodNanos;
+            scheduler.schedule(this::runTick, periodNanos, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    public void stop() {
+        running = false;
+        for (ScheduledFuture<?> task : periodicTasks) {
+            task.cancel(false);
+        }
+        periodicTasks.clear();
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public void submit(Command command) {
+        commands.offer(command);
+    }
+
+    public void schedule(Command command, long delay, TimeUnit unit) {
+        if (running) {
+            scheduler.schedule(() -> submit(command), delay, unit);
+        }
+    }
+
+    public void scheduleAtFixedRate(Command command, long period, TimeUnit unit) {
+        if (running && period > 0) {
+            periodicTasks.add(scheduler.scheduleAtFixedRate(() -> submit(command), period, period, unit));
+        }
+    }
+
+    private void runTick() {
+        if (!running) {
+            return;
+        }
+        long start = System.nanoTime();
+        long jitter = start - nextTickNanos;
+
+        tickThread = Thread.currentThread();
+        try {
+            drainCommands();
+            metrics.recordPhase(ServerMetrics.Phase.INPUT_DRAIN, System.nanoTime() - start);
+            tick.run();
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка игрового такта: " + e.getMessage());
+        } finally {
+            tickThread = null;
+        }
+
+        long end = System.nanoTime();
+        nextTickNanos += periodNanos;
+        long lag = end - nextTickNanos;
+        if (lag >= periodNanos) {
+            long missed = lag / periodNanos;
+            metrics.recordSkippedTicks(missed);
+            nextTickNanos += missed * periodNanos;
+        }
+        metrics.recordTick(end - start, jitter, commands.size());
+        if (running) {
+            scheduler.schedule(this::runTick, Math.max(0, nextTickNanos - end), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void drainCommands() {
+        Command command;
+        int drained = 0;
+        while (drained < MAX_COMMANDS_PER_TICK && (command = commands.poll()) != null) {
+            execute(command);
+            drained++;
+        }
+    }
+
+    // For hosts that drive the simulation by hand instead of starting the loop.
+    void runPendingCommands() {
+        drainCommands();
+    }
+
+    private void execute(Command command) {
+        try {
+            command.execute();
+        } catch (IOException | RuntimeException e) {
+            metrics.recordFailedCommand();
+            System.err.println("Ошибка команды игрового такта: " + e);
+        }
+    }
+
+    public boolean inTick() { return tickThread == Thread.currentThread(); }
+    public long getPeriodNanos() { return periodNanos; }
+    public int getPendingCommands() { return commands.size(); }
+}
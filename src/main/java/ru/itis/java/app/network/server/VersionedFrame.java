@@ -0,0 +1,45 @@
+package ru.itis.java.app.network.server;
+
+import ru.itis.java.app.network.protocol.GameProtocol;
+import ru.itis.java.app.network.protocol.PacketEncoder;
+import java.nio.ByteBuffer;
+
+final class VersionedFrame {
+    interface Writer {
+        void write(PacketEncoder encoder, ByteBuffer out);
+    }
+
+    private final FramePool pool;
+    private final PacketEncoder[] encoders;
+    private final int maxFrameSize;
+    private final Writer writer;
+    private final OutboundFrame[] frames = new OutboundFrame[GameProtocol.PROTOCOL_VERSION];
+
+    VersionedFrame(FramePool pool, PacketEncoder[] encoders, int maxFrameSize, Writer writer) {
+        this.pool = pool;
+        this.encoders = encoders;
+        this.maxFrameSize = maxFrameSize;
+        this.writer = writer;
+    }
+
+    OutboundFrame forVersion(int protocolVersion) {
+        int index = protocolVersion - 1;
+        OutboundFrame frame = frames[index];
+        if (frame == null) {
+            ByteBuffer buffer = pool.acquire(maxFrameSize);
+            writer.write(encoders[index], buffer);
+            frame = pool.frame(buffer);
+            frames[index] = frame;
+        }
+        return frame;
+    }
+
+    void release() {
+        for (int i = 0; i < frames.length; i++) {
+            if (frames[i] != null) {
+                frames[i].release();
+                frames[i] = null;
+            }
+        }
+    }
+}
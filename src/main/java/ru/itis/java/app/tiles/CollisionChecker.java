@@ -12,56 +12,13 @@ public class CollisionChecker {
     }
 
     public void checkTile(Entity entity) {
-
-        int entityLeftWorldX = (int) (entity.getWorldX() + entity.getSolidArea().getX());
-        int entityRightWorldX = (int) (entity.getWorldX() + entity.getSolidArea().getX() + entity.getSolidArea().getWidth());
-        int entityTopWorldY = (int) (entity.getWorldY() + entity.getSolidArea().getY());
-        int entityBottomWorldY = (int) (entity.getWorldY() + entity.getSolidArea().getY() + entity.getSolidArea().getHeight());
-
-        int entityLeftColumn = entityLeftWorldX / gamePanel.getTileSize();
-        int entityRightColumn = entityRightWorldX / gamePanel.getTileSize();
-        int entityTopRow = entityTopWorldY / gamePanel.getTileSize();
-        int entityBottomRow = entityBottomWorldY / gamePanel.getTileSize();
-
-        int tileNum1, tileNum2;
-
-        switch (entity.getDirection()) {
-            case "up" :
-                entityTopRow = (entityTopWorldY - entity.getSpeed()) / gamePanel.getTileSize();
-                tileNum1 = gamePanel.getGameMap().getMapTileResource()[entityTopRow][entityLeftColumn];
-                tileNum2 = gamePanel.getGameMap().getMapTileResource()[entityTopRow][entityRightColumn];
-                if (gamePanel.getGameMap().getTile()[tileNum1].isCollision() ||
-                        gamePanel.getGameMap().getTile()[tileNum2].isCollision()) {
-                    entity.setCollisionOn(true);
-                }
-                break;
-            case "down" :
-                entityBottomRow = (entityBottomWorldY + entity.getSpeed()) / gamePanel.getTileSize();
-                tileNum1 = gamePanel.getGameMap().getMapTileResource()[entityBottomRow][entityLeftColumn];
-                tileNum2 = gamePanel.getGameMap().getMapTileResource()[entityBottomRow][entityRightColumn];
-                if (gamePanel.getGameMap().getTile()[tileNum1].isCollision() ||
-                        gamePanel.getGameMap().getTile()[tileNum2].isCollision()) {
-                    entity.setCollisionOn(true);
-                }
-                break;
-            case "left" :
-                entityLeftColumn = (entityLeftWorldX - entity.getSpeed()) / gamePanel.getTileSize();
-                tileNum1 = gamePanel.getGameMap().getMapTileResource()[entityTopRow][entityLeftColumn];
-                tileNum2 = gamePanel.getGameMap().getMapTileResource()[entityBottomRow][entityLeftColumn];
-                if (gamePanel.getGameMap().getTile()[tileNum1].isCollision() ||
-                        gamePanel.getGameMap().getTile()[tileNum2].isCollision()) {
-                    entity.setCollisionOn(true);
-                }
-                break;
-            case "right" :
-                entityRightColumn = (entityRightWorldX + entity.getSpeed()) / gamePanel.getTileSize();
-                tileNum1 = gamePanel.getGameMap().getMapTileResource()[entityTopRow][entityRightColumn];
-                tileNum2 = gamePanel.getGameMap().getMapTileResource()[entityBottomRow][entityRightColumn];
-                if (gamePanel.getGameMap().getTile()[tileNum1].isCollision() ||
-                        gamePanel.getGameMap().getTile()[tileNum2].isCollision()) {
-                    entity.setCollisionOn(true);
-                }
-                break;
+        boolean blocked = gamePanel.getGameMap().getCollisionMap().isBlocked(
+                entity.getWorldX(), entity.getWorldY(),
+                (int) entity.getSolidArea().getX(), (int) entity.getSolidArea().getY(),
+                (int) entity.getSolidArea().getWidth(), (int) entity.getSolidArea().getHeight(),
+                entity.getDirection(), entity.getSpeed());
+        if (blocked) {
+            entity.setCollisionOn(true);
         }
     }
 
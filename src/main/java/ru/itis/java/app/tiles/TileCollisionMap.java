@@ -0,0 +1,100 @@
+package ru.itis.java.app.tiles;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+// Tile collision rules without any JavaFX dependency, so the server can run the same movement
+// checks as the client's CollisionChecker.
+public class TileCollisionMap {
+
+    public static final String MAP_PATH = "/environment/map/map.txt";
+    public static final int TILE_SIZE = 48;
+    public static final int WORLD_COLUMNS = 100;
+    public static final int WORLD_ROWS = 75;
+    // Water (19-25), tree (36) and house (37); TileManager reads these too, so keep them here only.
+    private static final int[] COLLISION_TILES = {19, 20, 21, 22, 23, 24, 25, 36, 37};
+
+    private final int[][] tiles;
+    private final boolean[] collision;
+    private final int tileSize;
+
+    public TileCollisionMap(int[][] tiles, boolean[] collision, int tileSize) {
+        this.tiles = tiles;
+        this.collision = collision;
+        this.tileSize = tileSize;
+    }
+
+    public static boolean[] collisionFlags(int tileTypes) {
+        boolean[] collision = new boolean[tileTypes];
+        for (int tile : COLLISION_TILES) {
+            if (tile < tileTypes) {
+                collision[tile] = true;
+            }
+        }
+        return collision;
+    }
+
+    public static TileCollisionMap load() {
+        int[][] tiles = new int[WORLD_ROWS][WORLD_COLUMNS];
+        boolean[] collision = collisionFlags(50);
+        try (InputStream stream = TileCollisionMap.class.getResourceAsStream(MAP_PATH)) {
+            if (stream == null) {
+                throw new IllegalStateException("ресурс " + MAP_PATH + " не найден");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+            for (int row = 0; row < WORLD_ROWS; row++) {
+                String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                String[] tokens = line.trim().split(" ");
+                for (int col = 0; col < WORLD_COLUMNS && col < tokens.length; col++) {
+                    tiles[row][col] = Integer.parseInt(tokens[col]);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Ошибка загрузки карты коллизий: " + e.getMessage());
+            return new TileCollisionMap(new int[WORLD_ROWS][WORLD_COLUMNS], new boolean[50], TILE_SIZE);
+        }
+        return new TileCollisionMap(tiles, collision, TILE_SIZE);
+    }
+
+    public boolean isBlocked(int worldX, int worldY, int solidX, int solidY, int solidWidth, int solidHeight,
+                             String direction, int speed) {
+        int leftWorldX = worldX + solidX;
+        int rightWorldX = worldX + solidX + solidWidth;
+        int topWorldY = worldY + solidY;
+        int bottomWorldY = worldY + solidY + solidHeight;
+
+        int leftColumn = leftWorldX / tileSize;
+        int rightColumn = rightWorldX / tileSize;
+        int topRow = topWorldY / tileSize;
+        int bottomRow = bottomWorldY / tileSize;
+
+        switch (direction) {
+            case "up":
+                topRow = (topWorldY - speed) / tileSize;
+                return isCollision(topRow, leftColumn) || isCollision(topRow, rightColumn);
+            case "down":
+                bottomRow = (bottomWorldY + speed) / tileSize;
+                return isCollision(bottomRow, leftColumn) || isCollision(bottomRow, rightColumn);
+            case "left":
+                leftColumn = (leftWorldX - speed) / tileSize;
+                return isCollision(topRow, leftColumn) || isCollision(bottomRow, leftColumn);
+            case "right":
+                rightColumn = (rightWorldX + speed) / tileSize;
+                return isCollision(topRow, rightColumn) || isCollision(bottomRow, rightColumn);
+            default:
+                return false;
+        }
+    }
+
+    private boolean isCollision(int row, int column) {
+        if (row < 0 || row >= tiles.length || column < 0 || column >= tiles[row].length) {
+            return true;
+        }
+        int tile = tiles[row][column];
+        return tile >= 0 && tile < collision.length && collision[tile];
+    }
+}
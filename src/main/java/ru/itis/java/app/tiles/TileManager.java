@@ -15,6 +15,7 @@ public class TileManager {
     protected final GamePanel gamePanel;
     protected final Tile[] tile;
     protected final int[][] mapTileResource;
+    private final TileCollisionMap collisionMap;
 
     public TileManager(GamePanel gamePanel) {
         this.gamePanel = gamePanel;
@@ -22,6 +23,13 @@ public class TileManager {
         mapTileResource = new int[gamePanel.getMaxWorldRows()][gamePanel.getMaxWorldColumns()];
         getTileImages();
         loadMap();
+        boolean[] collision = TileCollisionMap.collisionFlags(tile.length);
+        for (int i = 0; i < tile.length; i++) {
+            if (tile[i] != null) {
+                tile[i].setCollision(collision[i]);
+            }
+        }
+        collisionMap = new TileCollisionMap(mapTileResource, collision, gamePanel.getTileSize());
     }
 
     private void loadMap() {
@@ -113,31 +121,24 @@ public class TileManager {
 
             tile[19] = new Tile();
             tile[19].setImage(new Image(getClass().getResourceAsStream("/environment/images/water.png")));
-            tile[19].setCollision(true);
 
             tile[20] = new Tile();
             tile[20].setImage(new Image(getClass().getResourceAsStream("/environment/images/water-common.png")));
-            tile[20].setCollision(true);
 
             tile[21] = new Tile();
             tile[21].setImage(new Image(getClass().getResourceAsStream("/environment/images/water-shining.png")));
-            tile[21].setCollision(true);
 
             tile[22] = new Tile();
             tile[22].setImage(new Image(getClass().getResourceAsStream("/environment/images/water-grass-top-left.png")));
-            tile[22].setCollision(true);
 
             tile[23] = new Tile();
             tile[23].setImage(new Image(getClass().getResourceAsStream("/environment/images/water-grass-top-right.png")));
-            tile[23].setCollision(true);
 
             tile[24] = new Tile();
             tile[24].setImage(new Image(getClass().getResourceAsStream("/environment/images/water-grass-bot-left.png")));
-            tile[24].setCollision(true);
 
             tile[25] = new Tile();
             tile[25].setImage(new Image(getClass().getResourceAsStream("/environment/images/water-grass-bot-right.png")));
-            tile[25].setCollision(true);
 
             tile[26] = new Tile();
             tile[26].setImage(new Image(getClass().getResourceAsStream("/environment/images/sand.png")));
@@ -171,11 +172,9 @@ public class TileManager {
 
             tile[36] = new Tile();
             tile[36].setImage(new Image(getClass().getResourceAsStream("/environment/images/tree.png")));
-            tile[36].setCollision(true);
 
             tile[37] = new Tile();
             tile[37].setImage(new Image(getClass().getResourceAsStream("/environment/images/house-common.png")));
-            tile[37].setCollision(true);
 
             tile[38] = new Tile();
             tile[38].setImage(new Image(getClass().getResourceAsStream("/environment/images/ladder-up.png")));
@@ -238,4 +237,5 @@ public class TileManager {
 
     public Tile[] getTile() { return tile; }
     public int[][] getMapTileResource() { return mapTileResource; }
+    public TileCollisionMap getCollisionMap() { return collisionMap; }
 }